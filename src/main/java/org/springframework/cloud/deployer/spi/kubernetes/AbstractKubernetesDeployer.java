@@ -16,10 +16,18 @@
 
 package org.springframework.cloud.deployer.spi.kubernetes;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
@@ -30,11 +38,11 @@ import org.springframework.cloud.deployer.spi.app.AppDeployer;
 import org.springframework.cloud.deployer.spi.app.AppStatus;
 import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
 import org.springframework.cloud.deployer.spi.core.RuntimeEnvironmentInfo;
-import org.springframework.cloud.deployer.spi.util.ByteSizeUtils;
 import org.springframework.cloud.deployer.spi.util.RuntimeVersionUtils;
 import org.springframework.util.StringUtils;
 
 import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.EnvVar;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.PodSpec;
@@ -42,6 +50,8 @@ import io.fabric8.kubernetes.api.model.PodSpecBuilder;
 import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.kubernetes.api.model.ResourceRequirements;
 import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeBuilder;
+import io.fabric8.kubernetes.api.model.VolumeMount;
 import io.fabric8.kubernetes.client.KubernetesClient;
 
 /**
@@ -60,6 +70,12 @@ public class AbstractKubernetesDeployer {
 	protected static final String SPRING_MARKER_KEY = "role";
 	protected static final String SPRING_MARKER_VALUE = "spring-app";
 
+	private static final int POD_SPEC_CACHE_SIZE = 256;
+
+	private static final int VOLUME_CACHE_SIZE = 64;
+
+	private static final int WAITING_SINCE_CACHE_SIZE = 1024;
+
 	protected static final Log logger = LogFactory.getLog(AbstractKubernetesDeployer.class);
 
 	protected ContainerFactory containerFactory;
@@ -68,6 +84,34 @@ public class AbstractKubernetesDeployer {
 
 	protected KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
 
+	protected KubernetesDeployerMetrics metrics = KubernetesDeployerMetrics.NONE;
+
+	/**
+	 * Pod specs built for requests, keyed by everything the spec is built from. The deployer properties are
+	 * assumed not to change in place for the lifetime of the deployer.
+	 */
+	private final LruCache<List<Object>, PodSpec> podSpecCache = new LruCache<>(POD_SPEC_CACHE_SIZE);
+
+	/**
+	 * Volumes parsed from the YAML of the volumes deployment property, keyed by the YAML.
+	 */
+	private final LruCache<String, List<Volume>> parsedVolumes = new LruCache<>(VOLUME_CACHE_SIZE);
+
+	/**
+	 * When the containers of pending pods were first seen waiting for a reason that fails the pod once it has
+	 * persisted for longer than the pending failure threshold.
+	 */
+	private final LruCache<String, Instant> waitingSince = new LruCache<>(WAITING_SINCE_CACHE_SIZE);
+
+	/**
+	 * Set the metrics to record the operations and their API requests with.
+	 *
+	 * @param metrics the metrics, or {@code null} to record nothing
+	 */
+	public void setMetrics(KubernetesDeployerMetrics metrics) {
+		this.metrics = metrics != null ? metrics : KubernetesDeployerMetrics.NONE;
+	}
+
 	/**
 	 * Create the RuntimeEnvironmentInfo.
 	 *
@@ -105,15 +149,77 @@ public class AbstractKubernetesDeployer {
 	}
 
 	protected AppStatus buildAppStatus(String id, PodList list) {
+		return buildAppStatus(id, list != null ? list.getItems() : null);
+	}
+
+	protected AppStatus buildAppStatus(String id, List<Pod> pods) {
+		return buildAppStatus(id, pods, null);
+	}
+
+	/**
+	 * Build the status of an app from its pods, adding attributes that apply to the app as a whole
+	 * to the attributes of each of its instances.
+	 */
+	protected AppStatus buildAppStatus(String id, List<Pod> pods, Map<String, String> appAttributes) {
 		AppStatus.Builder statusBuilder = AppStatus.of(id);
-		if (list != null && list.getItems() != null) {
-			for (Pod pod : list.getItems()) {
-				statusBuilder.with(new KubernetesAppInstanceStatus(id, pod, properties));
+		if (pods != null) {
+			for (Pod pod : pods) {
+				KubernetesAppInstanceStatus instanceStatus =
+						new KubernetesAppInstanceStatus(id, pod, properties, appAttributes, waitingSince);
+				if (instanceStatus.getStartupLatencies().containsKey("ready")) {
+					metrics.podStarted(id, instanceStatus.getId(), instanceStatus.getUid(), instanceStatus.getImage(),
+							instanceStatus.getStartupLatencies());
+				}
+				statusBuilder.with(instanceStatus);
 			}
 		}
 		return statusBuilder.build();
 	}
 
+	/**
+	 * Build the statuses of several apps from a single list of pods, partitioning the pods by their
+	 * {@value #SPRING_APP_KEY} label. Apps without any pods get an empty status.
+	 *
+	 * @param ids the ids of the apps to build the statuses for
+	 * @param pods the pods of all the apps
+	 * @return the statuses keyed by app id, in the iteration order of the given ids
+	 */
+	protected Map<String, AppStatus> buildAppStatuses(Collection<String> ids, List<Pod> pods) {
+		return buildAppStatuses(ids, pods, Collections.emptyMap());
+	}
+
+	/**
+	 * Build the statuses of several apps from a single list of pods, adding the attributes that apply to
+	 * an app as a whole to the attributes of each of its instances.
+	 *
+	 * @param ids the ids of the apps to build the statuses for
+	 * @param pods the pods of all the apps
+	 * @param appAttributes the attributes of the apps that have any, keyed by app id
+	 * @return the statuses keyed by app id, in the iteration order of the given ids
+	 */
+	protected Map<String, AppStatus> buildAppStatuses(Collection<String> ids, List<Pod> pods,
+			Map<String, Map<String, String>> appAttributes) {
+		Map<String, List<Pod>> podsById = new HashMap<>();
+		for (String id : ids) {
+			podsById.put(id, new ArrayList<>());
+		}
+		if (pods != null) {
+			for (Pod pod : pods) {
+				if (pod.getMetadata() != null && pod.getMetadata().getLabels() != null) {
+					List<Pod> appPods = podsById.get(pod.getMetadata().getLabels().get(SPRING_APP_KEY));
+					if (appPods != null) {
+						appPods.add(pod);
+					}
+				}
+			}
+		}
+		Map<String, AppStatus> statuses = new LinkedHashMap<>();
+		for (String id : ids) {
+			statuses.put(id, buildAppStatus(id, podsById.get(id), appAttributes.get(id)));
+		}
+		return statuses;
+	}
+
 	/**
 	 * Create a PodSpec to be used for app and task deployments
 	 *
@@ -126,6 +232,94 @@ public class AbstractKubernetesDeployer {
 	 */
 	protected PodSpec createPodSpec(String appId, AppDeploymentRequest request,
 	                                Integer port, Integer instanceIndex, boolean neverRestart) {
+		return createPodSpec(appId, request, resolveSettings(request), port, instanceIndex, neverRestart);
+	}
+
+	/**
+	 * Create a PodSpec to be used for app and task deployments from the settings already resolved from the
+	 * request, so that a deploy creating several resources resolves them only once.
+	 *
+	 * @param appId the app ID
+	 * @param request app deployment request
+	 * @param settings the settings resolved from the request
+	 * @param port port to use for app or null if none
+	 * @param instanceIndex instance index for app or null if no index
+	 * @param neverRestart use restart policy of Never
+	 * @return the PodSpec
+	 */
+	protected PodSpec createPodSpec(String appId, AppDeploymentRequest request,
+	                                ResolvedKubernetesDeploymentSettings settings,
+	                                Integer port, Integer instanceIndex, boolean neverRestart) {
+		return metrics.time("createPodSpec",
+				() -> cachedPodSpec(appId, request, settings, port, instanceIndex, neverRestart));
+	}
+
+	private PodSpec cachedPodSpec(String appId, AppDeploymentRequest request,
+	                              ResolvedKubernetesDeploymentSettings settings,
+	                              Integer port, Integer instanceIndex, boolean neverRestart) {
+		// the containers of the default factory only differ between instances in their name and index variables,
+		// so all instances are derived from the same cached spec built without an index
+		boolean derivable = containerFactory != null && containerFactory.getClass() == DefaultContainerFactory.class;
+		List<Object> key = podSpecKey(appId, request, port, derivable ? null : instanceIndex, neverRestart);
+		PodSpec podSpec = key == null ? null : podSpecCache.get(key);
+		if (podSpec == null) {
+			podSpec = buildPodSpec(appId, request, settings, port, derivable ? null : instanceIndex, neverRestart);
+			if (key != null) {
+				podSpecCache.put(key, podSpec);
+			}
+		}
+		// callers may modify the spec, so never hand out the cached instance itself
+		podSpec = new PodSpecBuilder(podSpec).build();
+		if (derivable && instanceIndex != null) {
+			applyInstanceIndex(podSpec, appId, instanceIndex);
+		}
+		return podSpec;
+	}
+
+	/**
+	 * Change a spec built without an instance index into the spec of the instance with the given index, the way
+	 * {@link DefaultContainerFactory} would have created its container.
+	 */
+	private static void applyInstanceIndex(PodSpec podSpec, String appId, int instanceIndex) {
+		for (Container container : podSpec.getContainers()) {
+			if (appId.equals(container.getName())) {
+				container.setName(appId + "-" + instanceIndex);
+			}
+			List<EnvVar> env = container.getEnv();
+			int position = env.size();
+			for (int i = 0; i < env.size(); i++) {
+				if ("SPRING_CLOUD_APPLICATION_GUID".equals(env.get(i).getName())) {
+					position = i + 1;
+				}
+			}
+			env.add(position, new EnvVar("SPRING_APPLICATION_INDEX", String.valueOf(instanceIndex), null));
+			env.add(position, new EnvVar(AppDeployer.INSTANCE_INDEX_PROPERTY_KEY, String.valueOf(instanceIndex), null));
+		}
+	}
+
+	/**
+	 * @return a key covering everything the spec is built from, or {@code null} if the request can't be keyed.
+	 * The deployer properties and container factory are only compared by identity, so replacing them is noticed
+	 * but changing them in place is not.
+	 */
+	private List<Object> podSpecKey(String appId, AppDeploymentRequest request, Integer port,
+	                                Integer instanceIndex, boolean neverRestart) {
+		String resource;
+		try {
+			resource = request.getResource().getURI().toString();
+		}
+		catch (IOException | RuntimeException e) {
+			return null;
+		}
+		return Arrays.asList(appId, resource, request.getDefinition().getName(),
+				new HashMap<>(request.getDefinition().getProperties()), new HashMap<>(request.getDeploymentProperties()),
+				new ArrayList<>(request.getCommandlineArguments()), port, instanceIndex, neverRestart,
+				new IdentityKey(properties), new IdentityKey(containerFactory));
+	}
+
+	private PodSpec buildPodSpec(String appId, AppDeploymentRequest request,
+	                             ResolvedKubernetesDeploymentSettings settings,
+	                             Integer port, Integer instanceIndex, boolean neverRestart) {
 		PodSpecBuilder podSpec = new PodSpecBuilder();
 
 		// Add image secrets if set
@@ -133,21 +327,25 @@ public class AbstractKubernetesDeployer {
 			podSpec.addNewImagePullSecret(properties.getImagePullSecret());
 		}
 
-		boolean hostNetwork = getHostNetwork(request);
-		Container container = containerFactory.create(appId, request, port, instanceIndex, hostNetwork);
+		boolean hostNetwork = settings.isHostNetwork();
+		Container container = metrics.time("createContainer", () ->
+				containerFactory.getClass() == DefaultContainerFactory.class ?
+						((DefaultContainerFactory) containerFactory).create(appId, request, settings, port, instanceIndex) :
+						containerFactory.create(appId, request, port, instanceIndex, hostNetwork));
 
 		// add memory and cpu resource limits
 		ResourceRequirements req = new ResourceRequirements();
-		req.setLimits(deduceResourceLimits(request));
-		req.setRequests(deduceResourceRequests(request));
+		req.setLimits(new HashMap<>(settings.getLimits()));
+		req.setRequests(new HashMap<>(settings.getRequests()));
 		container.setResources(req);
-		ImagePullPolicy pullPolicy = deduceImagePullPolicy(request);
-		container.setImagePullPolicy(pullPolicy.name());
+		container.setImagePullPolicy(settings.getImagePullPolicy().name());
 
 		// only add volumes with corresponding volume mounts
+		Set<String> volumeMountNames = container.getVolumeMounts().stream()
+				.map(VolumeMount::getName)
+				.collect(Collectors.toSet());
 		podSpec.withVolumes(getVolumes(request).stream()
-				.filter(volume -> container.getVolumeMounts().stream()
-						.anyMatch(volumeMount -> volumeMount.getName().equals(volume.getName())))
+				.filter(volume -> volumeMountNames.contains(volume.getName()))
 				.collect(Collectors.toList()));
 
 		if (hostNetwork) {
@@ -179,33 +377,42 @@ public class AbstractKubernetesDeployer {
 	 */
 	protected List<Volume> getVolumes(AppDeploymentRequest request) {
 		List<Volume> volumes = new ArrayList<>();
+		Set<String> names = new HashSet<>();
 
 		String volumeDeploymentProperty = request.getDeploymentProperties()
 				.getOrDefault("spring.cloud.deployer.kubernetes.volumes", "");
 		if (!StringUtils.isEmpty(volumeDeploymentProperty)) {
-			YamlConfigurationFactory<KubernetesDeployerProperties> volumeYamlConfigurationFactory =
-					new YamlConfigurationFactory<>(KubernetesDeployerProperties.class);
-			volumeYamlConfigurationFactory.setYaml("{ volumes: " + volumeDeploymentProperty + " }");
-			try {
-				volumeYamlConfigurationFactory.afterPropertiesSet();
-				volumes.addAll(
-						volumeYamlConfigurationFactory.getObject().getVolumes());
-			}
-			catch (Exception e) {
-				throw new IllegalArgumentException(
-						String.format("Invalid volume '%s'", volumeDeploymentProperty), e);
+			for (Volume volume : parsedVolumes.computeIfAbsent(volumeDeploymentProperty, this::parseVolumes)) {
+				// the parsed volumes are shared by all requests with the same property, so never hand them out
+				volumes.add(new VolumeBuilder(volume).build());
+				names.add(volume.getName());
 			}
 		}
 		// only add volumes that have not already been added, based on the volume's name
 		// i.e. allow provided deployment volumes to override deployer defined volumes
-		volumes.addAll(properties.getVolumes().stream()
-				.filter(volume -> volumes.stream()
-						.noneMatch(existingVolume -> existingVolume.getName().equals(volume.getName())))
-				.collect(Collectors.toList()));
+		for (Volume volume : properties.getVolumes()) {
+			if (!names.contains(volume.getName())) {
+				volumes.add(volume);
+			}
+		}
 
 		return volumes;
 	}
 
+	private List<Volume> parseVolumes(String volumeDeploymentProperty) {
+		YamlConfigurationFactory<KubernetesDeployerProperties> volumeYamlConfigurationFactory =
+				new YamlConfigurationFactory<>(KubernetesDeployerProperties.class);
+		volumeYamlConfigurationFactory.setYaml("{ volumes: " + volumeDeploymentProperty + " }");
+		try {
+			volumeYamlConfigurationFactory.afterPropertiesSet();
+			return volumeYamlConfigurationFactory.getObject().getVolumes();
+		}
+		catch (Exception e) {
+			throw new IllegalArgumentException(
+					String.format("Invalid volume '%s'", volumeDeploymentProperty), e);
+		}
+	}
+
 	/**
 	 * Get the resource limits for the deployment request. A Pod can define its maximum needed resources by setting the
 	 * limits and Kubernetes can provide more resources if any are free.
@@ -215,70 +422,13 @@ public class AbstractKubernetesDeployer {
 	 * Also supports the deprecated properties {@code spring.cloud.deployer.kubernetes.memory/cpu}.
 	 *
 	 * @param request    The deployment properties.
+	 * @deprecated the pod spec is built from the settings returned by
+	 * {@link #resolveSettings(AppDeploymentRequest)}, so overriding this method no longer affects it;
+	 * override {@link #resolveSettings(AppDeploymentRequest)} instead
 	 */
+	@Deprecated
 	protected Map<String, Quantity> deduceResourceLimits(AppDeploymentRequest request) {
-		String memDeployer = getCommonDeployerMemory(request);
-		String memOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.memory");
-		if (memDeployer != null) {
-			if (memOverride == null) {
-				memOverride = memDeployer;
-			}
-			else {
-				logger.warn(String.format("Both " + AppDeployer.MEMORY_PROPERTY_KEY +
-								"=%s and spring.cloud.deployer.kubernetes.memory=%s specified, the latter will take precedence.",
-						memDeployer, memOverride));
-			}
-		}
-		String memLimitsOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.limits.memory");
-		if (memLimitsOverride != null) {
-			// Non-deprecated value has priority
-			memOverride = memLimitsOverride;
-		}
-
-		// Use server property if there is no request setting
-		if (memOverride == null) {
-			if (properties.getLimits().getMemory() != null) {
-				// Non-deprecated value has priority
-				memOverride = properties.getLimits().getMemory();
-			} else {
-				memOverride = properties.getMemory();
-			}
-		}
-
-		String cpuDeployer = request.getDeploymentProperties().get(AppDeployer.CPU_PROPERTY_KEY);
-		String cpuOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.cpu");
-		if (cpuDeployer != null) {
-			if (cpuOverride == null) {
-				cpuOverride = cpuDeployer;
-			}
-			else {
-				logger.warn(String.format("Both " + AppDeployer.CPU_PROPERTY_KEY +
-								"=%s and spring.cloud.deployer.kubernetes.cpu=%s specified, the latter will take precedence.",
-						cpuDeployer, cpuOverride));
-			}
-		}
-		String cpuLimitsOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.limits.cpu");
-		if (cpuLimitsOverride != null) {
-			// Non-deprecated value has priority
-			cpuOverride = cpuLimitsOverride;
-		}
-
-		// Use server property if there is no request setting
-		if (cpuOverride == null) {
-			if (properties.getLimits().getCpu() != null) {
-				// Non-deprecated value has priority
-				cpuOverride = properties.getLimits().getCpu();
-			} else {
-				cpuOverride = properties.getCpu();
-			}
-		}
-
-		logger.debug("Using limits - cpu: " + cpuOverride + " mem: " + memOverride);
-
-		Map<String,Quantity> limits = new HashMap<String,Quantity>();
-		limits.put("memory", new Quantity(memOverride));
-		limits.put("cpu", new Quantity(cpuOverride));
-		return limits;
+		return new HashMap<>(resolveSettings(request).getLimits());
 	}
 
 	/**
@@ -287,23 +437,13 @@ public class AbstractKubernetesDeployer {
 	 *
 	 * @param request The deployment request.
 	 * @return The image pull policy to use for the container in the request.
+	 * @deprecated the pod spec is built from the settings returned by
+	 * {@link #resolveSettings(AppDeploymentRequest)}, so overriding this method no longer affects it;
+	 * override {@link #resolveSettings(AppDeploymentRequest)} instead
 	 */
+	@Deprecated
 	protected ImagePullPolicy deduceImagePullPolicy(AppDeploymentRequest request) {
-		String pullPolicyOverride =
-				request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.imagePullPolicy");
-
-		ImagePullPolicy pullPolicy;
-		if (pullPolicyOverride == null) {
-			pullPolicy = properties.getImagePullPolicy();
-		} else {
-			pullPolicy = ImagePullPolicy.relaxedValueOf(pullPolicyOverride);
-			if (pullPolicy == null) {
-				logger.warn("Parsing of pull policy " + pullPolicyOverride + " failed, using default \"Always\".");
-				pullPolicy = ImagePullPolicy.Always;
-			}
-		}
-		logger.debug("Using imagePullPolicy " + pullPolicy);
-		return pullPolicy;
+		return resolveSettings(request).getImagePullPolicy();
 	}
 
 	/**
@@ -312,28 +452,13 @@ public class AbstractKubernetesDeployer {
 	 * Falls back to the server properties if not present in the deployment request.
 	 *
 	 * @param request    The deployment properties.
+	 * @deprecated the pod spec is built from the settings returned by
+	 * {@link #resolveSettings(AppDeploymentRequest)}, so overriding this method no longer affects it;
+	 * override {@link #resolveSettings(AppDeploymentRequest)} instead
 	 */
+	@Deprecated
 	protected Map<String, Quantity> deduceResourceRequests(AppDeploymentRequest request) {
-		String memOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.requests.memory");
-		if (memOverride == null) {
-			memOverride = properties.getRequests().getMemory();
-		}
-
-		String cpuOverride = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.requests.cpu");
-		if (cpuOverride == null) {
-			cpuOverride = properties.getRequests().getCpu();
-		}
-
-		logger.debug("Using requests - cpu: " + cpuOverride + " mem: " + memOverride);
-
-		Map<String,Quantity> requests = new HashMap<String, Quantity>();
-		if (memOverride != null) {
-			requests.put("memory", new Quantity(memOverride));
-		}
-		if (cpuOverride != null) {
-			requests.put("cpu", new Quantity(cpuOverride));
-		}
-		return requests;
+		return new HashMap<>(resolveSettings(request).getRequests());
 	}
 
 	/**
@@ -341,28 +466,49 @@ public class AbstractKubernetesDeployer {
 	 *
 	 * @param request The deployment request.
 	 * @return Whether host networking is requested
+	 * @deprecated the pod spec is built from the settings returned by
+	 * {@link #resolveSettings(AppDeploymentRequest)}, so overriding this method no longer affects it;
+	 * override {@link #resolveSettings(AppDeploymentRequest)} instead
 	 */
+	@Deprecated
 	protected boolean getHostNetwork(AppDeploymentRequest request) {
-		String hostNetworkOverride =
-				request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.hostNetwork");
-		boolean hostNetwork;
-		if (StringUtils.isEmpty(hostNetworkOverride)) {
-			hostNetwork = properties.isHostNetwork();
+		return resolveSettings(request).isHostNetwork();
+	}
+
+	/**
+	 * Resolve all {@code spring.cloud.deployer.kubernetes.*} settings of the deployment request in one pass.
+	 * A deploy resolves the settings once and passes them on to everything it builds, rather than resolving
+	 * them again for each resource. Subclasses that customize the resources, image pull policy or host
+	 * networking of the pod spec do so by overriding this method.
+	 *
+	 * @param request The deployment request.
+	 * @return the resolved settings
+	 * @throws IllegalArgumentException if a setting of the request is invalid
+	 */
+	protected ResolvedKubernetesDeploymentSettings resolveSettings(AppDeploymentRequest request) {
+		return ResolvedKubernetesDeploymentSettings.resolve(properties, request);
+	}
+
+	/**
+	 * Wraps an object that does not implement {@code equals}, or whose state may change, to compare it by
+	 * identity in a cache key.
+	 */
+	private static final class IdentityKey {
+
+		private final Object value;
+
+		IdentityKey(Object value) {
+			this.value = value;
 		}
-		else {
-			hostNetwork = Boolean.valueOf(hostNetworkOverride);
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof IdentityKey && ((IdentityKey) other).value == value;
 		}
-		logger.debug("Using hostNetwork " + hostNetwork);
-		return hostNetwork;
-	}
 
-	private String getCommonDeployerMemory(AppDeploymentRequest request) {
-		String mem = request.getDeploymentProperties().get(AppDeployer.MEMORY_PROPERTY_KEY);
-		if (mem == null) {
-			return null;
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(value);
 		}
-		long memAmount = ByteSizeUtils.parseToMebibytes(mem);
-		return memAmount + "Mi";
 	}
-
 }
@@ -19,10 +19,11 @@ package org.springframework.cloud.deployer.spi.kubernetes;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -36,12 +37,11 @@ import io.fabric8.kubernetes.api.model.HTTPGetActionBuilder;
 import io.fabric8.kubernetes.api.model.Probe;
 import io.fabric8.kubernetes.api.model.ProbeBuilder;
 import io.fabric8.kubernetes.api.model.VolumeMount;
+import io.fabric8.kubernetes.api.model.VolumeMountBuilder;
 
 import org.springframework.boot.bind.YamlConfigurationFactory;
 import org.springframework.cloud.deployer.spi.app.AppDeployer;
 import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
-import org.springframework.cloud.deployer.spi.util.CommandLineTokenizer;
-import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 /**
@@ -56,8 +56,17 @@ public class DefaultContainerFactory implements ContainerFactory {
 
 	private static Log logger = LogFactory.getLog(DefaultContainerFactory.class);
 
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private static final int VOLUME_MOUNT_CACHE_SIZE = 64;
+
 	private final KubernetesDeployerProperties properties;
 
+	/**
+	 * Volume mounts parsed from the YAML of the volume mounts deployment property, keyed by the YAML.
+	 */
+	private final LruCache<String, List<VolumeMount>> parsedVolumeMounts = new LruCache<>(VOLUME_MOUNT_CACHE_SIZE);
+
 	public DefaultContainerFactory(KubernetesDeployerProperties properties) {
 		this.properties = properties;
 	}
@@ -65,6 +74,20 @@ public class DefaultContainerFactory implements ContainerFactory {
 	@Override
 	public Container create(String appId, AppDeploymentRequest request, Integer port, Integer instanceIndex,
 	                        boolean hostNetwork) {
+		return create(appId, request, ResolvedKubernetesDeploymentSettings.resolve(properties, request), port,
+				instanceIndex, hostNetwork);
+	}
+
+	/**
+	 * Create a container from the already resolved settings of the deployment request.
+	 */
+	public Container create(String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
+	                        Integer port, Integer instanceIndex) {
+		return create(appId, request, settings, port, instanceIndex, settings.isHostNetwork());
+	}
+
+	private Container create(String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
+	                         Integer port, Integer instanceIndex, boolean hostNetwork) {
 		String image;
 		try {
 			image = request.getResource().getURI().getSchemeSpecificPart();
@@ -73,19 +96,11 @@ public class DefaultContainerFactory implements ContainerFactory {
 		}
 		logger.info("Using Docker image: " + image);
 
-		EntryPointStyle entryPointStyle = determineEntryPointStyle(properties, request);
+		EntryPointStyle entryPointStyle = settings.getEntryPointStyle();
 		logger.info("Using Docker entry point style: " + entryPointStyle);
 
-		Map<String, String> envVarsMap = new HashMap<>();
-		for (String envVar : properties.getEnvironmentVariables()) {
-			String[] strings = envVar.split("=", 2);
-			Assert.isTrue(strings.length == 2, "Invalid environment variable declared: " + envVar);
-			envVarsMap.put(strings[0], strings[1]);
-		}
-		//Create EnvVar entries for additional variables set at the app level
-		//For instance, this may be used to set JAVA_OPTS independently for each app if the base container
-		//image supports it.
-		envVarsMap.putAll(getAppEnvironmentVariables(request));
+		// the deployer environment variables, overridden by those set at the app level
+		Map<String, String> envVarsMap = new HashMap<>(settings.getEnvironmentVariables());
 
 		List<String> appArgs = new ArrayList<>();
 
@@ -100,7 +115,7 @@ public class DefaultContainerFactory implements ContainerFactory {
 				}
 				try {
 					envVarsMap.put("SPRING_APPLICATION_JSON",
-							new ObjectMapper().writeValueAsString(request.getDefinition().getProperties()));
+							objectMapper.writeValueAsString(request.getDefinition().getProperties()));
 				}
 				catch(JsonProcessingException e) {
 					throw new IllegalStateException("Unable to create SPRING_APPLICATION_JSON", e);
@@ -158,7 +173,7 @@ public class DefaultContainerFactory implements ContainerFactory {
 		}
 
 		//Add additional specified ports.  Further work is needed to add probe customization for each port.
-		List<Integer> additionalPorts = getContainerPorts(request);
+		List<Integer> additionalPorts = settings.getContainerPorts();
 		if(!additionalPorts.isEmpty()) {
 			for (Integer containerPort : additionalPorts) {
 				if (hostNetwork) {
@@ -176,7 +191,7 @@ public class DefaultContainerFactory implements ContainerFactory {
 		}
 
 		//Override the containers default entry point with one specified during the app deployment
-		List<String> containerCommand = getContainerCommand(request);
+		List<String> containerCommand = settings.getContainerCommand();
 		if(!containerCommand.isEmpty()) {
 			container.withCommand(containerCommand);
 		}
@@ -233,106 +248,41 @@ public class DefaultContainerFactory implements ContainerFactory {
 	 */
 	protected List<VolumeMount> getVolumeMounts(AppDeploymentRequest request) {
 		List<VolumeMount> volumeMounts = new ArrayList<>();
+		Set<String> names = new HashSet<>();
 
 		String volumeMountDeploymentProperty = request.getDeploymentProperties()
 				.getOrDefault("spring.cloud.deployer.kubernetes.volumeMounts", "");
 		if (!StringUtils.isEmpty(volumeMountDeploymentProperty)) {
-			YamlConfigurationFactory<KubernetesDeployerProperties> volumeMountYamlConfigurationFactory =
-					new YamlConfigurationFactory<>(KubernetesDeployerProperties.class);
-			volumeMountYamlConfigurationFactory.setYaml("{ volumeMounts: " + volumeMountDeploymentProperty + " }");
-			try {
-				volumeMountYamlConfigurationFactory.afterPropertiesSet();
-				volumeMounts.addAll(volumeMountYamlConfigurationFactory.getObject().getVolumeMounts());
-			}
-			catch (Exception e) {
-				throw new IllegalArgumentException(
-						String.format("Invalid volume mount '%s'", volumeMountDeploymentProperty), e);
+			for (VolumeMount volumeMount :
+					parsedVolumeMounts.computeIfAbsent(volumeMountDeploymentProperty, this::parseVolumeMounts)) {
+				// the parsed mounts are shared by all requests with the same property, so never hand them out
+				volumeMounts.add(new VolumeMountBuilder(volumeMount).build());
+				names.add(volumeMount.getName());
 			}
 		}
 		// only add volume mounts that have not already been added, based on the volume mount's name
 		// i.e. allow provided deployment volume mounts to override deployer defined volume mounts
-		volumeMounts.addAll(properties.getVolumeMounts().stream()
-				.filter(volumeMount -> volumeMounts.stream()
-						.noneMatch(existingVolumeMount ->
-								existingVolumeMount.getName().equals(volumeMount.getName())))
-				.collect(Collectors.toList()));
-
-		return volumeMounts;
-	}
-
-	/**
-	 * The list represents a single command with many arguments.
-	 *
-	 * @param request AppDeploymentRequest - used to gather application overridden
-	 * container command
-	 * @return a list of strings that represents the command and any arguments for that command
-	 */
-	private List<String> getContainerCommand(AppDeploymentRequest request) {
-		String containerCommand = request.getDeploymentProperties()
-				.getOrDefault("spring.cloud.deployer.kubernetes.containerCommand", "");
-		return new CommandLineTokenizer(containerCommand).getArgs();
-    }
-
-    /**
-     * @param request AppDeploymentRequest - used to gather additional container ports
-     * @return a list of Integers to add to the container
-     */
-    private List<Integer> getContainerPorts(AppDeploymentRequest request) {
-        List<Integer> containerPortList = new ArrayList<>();
-        String containerPorts = request.getDeploymentProperties()
-                .get("spring.cloud.deployer.kubernetes.containerPorts");
-        if (containerPorts != null) {
-            String[] containerPortSplit = containerPorts.split(",");
-            for (String containerPort : containerPortSplit) {
-                logger.trace("Adding container ports from AppDeploymentRequest: "
-                        + containerPort);
-				Integer port = Integer.parseInt(containerPort.trim());
-				containerPortList.add(port);
-            }
-        }
-        return containerPortList;
-    }
-
-    /**
-	 *
-	 * @param request AppDeploymentRequest - used to gather application specific
-	 * environment variables
-	 * @return a List of EnvVar objects for app specific environment settings
-	 */
-	private Map<String, String> getAppEnvironmentVariables(AppDeploymentRequest request) {
-		Map<String, String> appEnvVarMap = new HashMap<>();
-		String appEnvVar = request.getDeploymentProperties()
-				.get("spring.cloud.deployer.kubernetes.environmentVariables");
-		if (appEnvVar != null) {
-			String[] appEnvVars = appEnvVar.split(",");
-			for (String envVar : appEnvVars) {
-				logger.trace("Adding environment variable from AppDeploymentRequest: "
-						+ envVar);
-				String[] strings = envVar.split("=", 2);
-				Assert.isTrue(strings.length == 2,
-						"Invalid environment variable declared: " + envVar);
-				appEnvVarMap.put(strings[0], strings[1]);
+		for (VolumeMount volumeMount : properties.getVolumeMounts()) {
+			if (!names.contains(volumeMount.getName())) {
+				volumeMounts.add(volumeMount);
 			}
 		}
-		return appEnvVarMap;
+
+		return volumeMounts;
 	}
 
-	private EntryPointStyle determineEntryPointStyle(
-			KubernetesDeployerProperties properties, AppDeploymentRequest request) {
-		EntryPointStyle entryPointStyle = null;
-		String deployProperty =
-				request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.entryPointStyle");
-		if (deployProperty != null) {
-			try {
-				entryPointStyle = EntryPointStyle.valueOf(
-						deployProperty.toLowerCase());
-			}
-			catch (IllegalArgumentException ignore) {}
+	private List<VolumeMount> parseVolumeMounts(String volumeMountDeploymentProperty) {
+		YamlConfigurationFactory<KubernetesDeployerProperties> volumeMountYamlConfigurationFactory =
+				new YamlConfigurationFactory<>(KubernetesDeployerProperties.class);
+		volumeMountYamlConfigurationFactory.setYaml("{ volumeMounts: " + volumeMountDeploymentProperty + " }");
+		try {
+			volumeMountYamlConfigurationFactory.afterPropertiesSet();
+			return volumeMountYamlConfigurationFactory.getObject().getVolumeMounts();
 		}
-		if (entryPointStyle == null) {
-			entryPointStyle = properties.getEntryPointStyle();
+		catch (Exception e) {
+			throw new IllegalArgumentException(
+					String.format("Invalid volume mount '%s'", volumeMountDeploymentProperty), e);
 		}
-		return entryPointStyle;
 	}
 
 }
@@ -0,0 +1,555 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Kubernetes API operations that the fabric8 client does not offer as a single request, issued
+ * directly against the API server using the HTTP client (and thus the credentials) of a
+ * {@link KubernetesClient}.
+ */
+class KubernetesApiOperations {
+
+	/**
+	 * Propagation policy that deletes the object right away and leaves its dependents to the garbage collector.
+	 */
+	static final String BACKGROUND_PROPAGATION = "Background";
+
+	/**
+	 * Propagation policy that keeps the object around until the garbage collector has deleted its dependents.
+	 */
+	static final String FOREGROUND_PROPAGATION = "Foreground";
+
+	/**
+	 * Path of the core API group.
+	 */
+	static final String CORE_API = "api/v1";
+
+	/**
+	 * Path of the {@code apps/v1} API group, which the fabric8 client in use predates.
+	 */
+	static final String APPS_API = "apis/apps/v1";
+
+	/**
+	 * Path of the {@code autoscaling/v2} API group.
+	 */
+	static final String AUTOSCALING_API = "apis/autoscaling/v2";
+
+	/**
+	 * How often a list starts over from the first page when its continue token has expired.
+	 */
+	private static final int MAX_LIST_RESTARTS = 3;
+
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	private static final MediaType MERGE_PATCH = MediaType.parse("application/merge-patch+json");
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final PodStatusDecoder podStatusDecoder = new PodStatusDecoder(objectMapper);
+
+	private final KubernetesClient client;
+
+	private final int pageSize;
+
+	KubernetesApiOperations(KubernetesClient client) {
+		this(client, 0);
+	}
+
+	/**
+	 * @param pageSize the maximum number of items to ask the API server for per list request, or {@code 0}
+	 * to list all items with a single request
+	 */
+	KubernetesApiOperations(KubernetesClient client, int pageSize) {
+		this.client = client;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Delete a resource in the namespace of the client, having the garbage collector delete its dependents
+	 * according to the given propagation policy.
+	 *
+	 * @param resource the plural resource name, e.g. {@code replicationcontrollers}
+	 * @param name the name of the resource
+	 * @param propagationPolicy the propagation policy, e.g. {@value #BACKGROUND_PROPAGATION}
+	 * @return whether the resource existed
+	 */
+	boolean delete(String resource, String name, String propagationPolicy) {
+		return delete(CORE_API, resource, name, propagationPolicy);
+	}
+
+	/**
+	 * Delete a resource of the given API group in the namespace of the client.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code statefulsets}
+	 * @param name the name of the resource
+	 * @param propagationPolicy the propagation policy, e.g. {@value #BACKGROUND_PROPAGATION}
+	 * @return whether the resource existed
+	 */
+	boolean delete(String api, String resource, String name, String propagationPolicy) {
+		HttpUrl url = resourceUrl(api, resource).addPathSegment(name).build();
+		return execute(new Request.Builder().url(url).delete(deleteOptions(propagationPolicy)).build());
+	}
+
+	/**
+	 * Delete all resources of a type in the namespace of the client that carry the given labels,
+	 * using a single {@code deletecollection} request.
+	 *
+	 * @param resource the plural resource name, e.g. {@code pods}
+	 * @param labels the labels the resources to delete must have
+	 * @param propagationPolicy the propagation policy, e.g. {@value #BACKGROUND_PROPAGATION}
+	 */
+	void deleteCollection(String resource, Map<String, String> labels, String propagationPolicy) {
+		deleteCollection(CORE_API, resource, labels, propagationPolicy);
+	}
+
+	/**
+	 * Delete all resources of a type of the given API group in the namespace of the client that carry
+	 * the given labels.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code statefulsets}
+	 * @param labels the labels the resources to delete must have
+	 * @param propagationPolicy the propagation policy, e.g. {@value #BACKGROUND_PROPAGATION}
+	 */
+	void deleteCollection(String api, String resource, Map<String, String> labels, String propagationPolicy) {
+		HttpUrl url = resourceUrl(api, resource)
+				.addQueryParameter("labelSelector", labelSelector(labels))
+				.build();
+		execute(new Request.Builder().url(url).delete(deleteOptions(propagationPolicy)).build());
+	}
+
+	/**
+	 * Check whether any resource of a type carrying the given labels exists in the namespace of the client,
+	 * asking the API server for at most one item.
+	 *
+	 * @param resource the plural resource name, e.g. {@code replicationcontrollers}
+	 * @param labels the labels the resource must have
+	 * @return whether a matching resource exists
+	 */
+	boolean exists(String resource, Map<String, String> labels) {
+		return exists(CORE_API, resource, labels);
+	}
+
+	/**
+	 * Check whether any resource of a type of the given API group carrying the given labels exists in the
+	 * namespace of the client.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code statefulsets}
+	 * @param labels the labels the resource must have
+	 * @return whether a matching resource exists
+	 */
+	boolean exists(String api, String resource, Map<String, String> labels) {
+		return exists(api, resource, labels, ReadConsistency.strong);
+	}
+
+	/**
+	 * Check whether any resource of a type of the given API group carrying the given labels exists in the
+	 * namespace of the client, reading with the given consistency.
+	 */
+	boolean exists(String api, String resource, Map<String, String> labels, ReadConsistency consistency) {
+		HttpUrl.Builder url = resourceUrl(api, resource)
+				.addQueryParameter("labelSelector", labelSelector(labels))
+				.addQueryParameter("limit", "1");
+		addResourceVersion(url, consistency);
+		JsonNode items = readTree(new Request.Builder().url(url.build()).get().build()).get("items");
+		return items != null && items.size() > 0;
+	}
+
+	/**
+	 * List the resources of a type of the given API group carrying the given labels in the namespace of the client.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code statefulsets}
+	 * @param labels the labels the resources must have
+	 * @return the items of the list, as JSON
+	 */
+	List<JsonNode> list(String api, String resource, Map<String, String> labels) {
+		return list(api, resource, labels, ReadConsistency.strong);
+	}
+
+	/**
+	 * List the resources of a type of the given API group carrying the given labels in the namespace of the
+	 * client, reading with the given consistency.
+	 */
+	List<JsonNode> list(String api, String resource, Map<String, String> labels, ReadConsistency consistency) {
+		return list(api, resource, labelSelector(labels), consistency);
+	}
+
+	/**
+	 * List the resources of a type of the given API group matching a label selector in the namespace of the
+	 * client, reading with the given consistency.
+	 *
+	 * @param api the path of the API group, e.g. {@value #AUTOSCALING_API}
+	 * @param resource the plural resource name, e.g. {@code horizontalpodautoscalers}
+	 * @param labelSelector the label selector, e.g. {@code spring-app-id in (a,b)}
+	 * @param consistency the consistency to read the resources with
+	 * @return the items of the list, as JSON
+	 */
+	List<JsonNode> list(String api, String resource, String labelSelector, ReadConsistency consistency) {
+		List<JsonNode> items = new ArrayList<>();
+		list(api, resource, labelSelector, consistency,
+				parser -> objectMapper.readValue(parser, JsonNode.class), items::add, items::clear);
+		return items;
+	}
+
+	/**
+	 * List the resources of a type of the given API group carrying the given labels in the namespace of the
+	 * client, binding each of them to the given type.
+	 *
+	 * @param api the path of the API group, e.g. {@value #CORE_API}
+	 * @param resource the plural resource name, e.g. {@code services}
+	 * @param labels the labels the resources must have
+	 * @param type the type to bind the items to, e.g. a fabric8 model type
+	 * @return the items of the list
+	 */
+	<T> List<T> list(String api, String resource, Map<String, String> labels, Class<T> type) {
+		List<T> items = new ArrayList<>();
+		list(api, resource, labelSelector(labels), ReadConsistency.strong,
+				parser -> objectMapper.readValue(parser, type), items::add, items::clear);
+		return items;
+	}
+
+	/**
+	 * List the pods matching a label selector in the namespace of the client, decoding only the fields
+	 * the status of an app is built from.
+	 *
+	 * @param labelSelector the label selector, e.g. {@code spring-app-id=app}
+	 * @param consistency the consistency to read the pods with
+	 * @return the pods, reduced to their name, labels and status
+	 * @see PodStatusDecoder
+	 */
+	List<Pod> listPodStatuses(String labelSelector, ReadConsistency consistency) {
+		List<Pod> pods = new ArrayList<>();
+		list(CORE_API, "pods", labelSelector, consistency, podStatusDecoder::readPod, pods::add, pods::clear);
+		return pods;
+	}
+
+	/**
+	 * Pass the pods matching a label selector in the namespace of the client to an action as they are
+	 * read, decoding only the fields the status of an app is built from. As the pods already passed to the
+	 * action can't be taken back, an expired continue token fails the list rather than having it start over.
+	 *
+	 * @param labelSelector the label selector, e.g. {@code spring-app-id=app}
+	 * @param consistency the consistency to read the pods with
+	 * @param action the action to pass each pod to
+	 */
+	void listPodStatuses(String labelSelector, ReadConsistency consistency, Consumer<Pod> action) {
+		list(CORE_API, "pods", labelSelector, consistency, podStatusDecoder::readPod, action);
+	}
+
+	/**
+	 * Get a pod in the namespace of the client, decoding only the fields its status is built from.
+	 *
+	 * @param name the name of the pod
+	 * @param consistency the consistency to read the pod with
+	 * @return the pod, reduced to its name, labels and status, or {@code null} if it does not exist
+	 */
+	Pod getPodStatus(String name, ReadConsistency consistency) {
+		HttpUrl.Builder url = resourceUrl("pods").addPathSegment(name);
+		addResourceVersion(url, consistency);
+		Request request = new Request.Builder().url(url.build()).get().build();
+		try (Response response = httpClient().newCall(request).execute()) {
+			if (response.code() == 404) {
+				return null;
+			}
+			checkResponse(request, response);
+			try (JsonParser parser = objectMapper.getFactory().createParser(response.body().byteStream())) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new IOException("Expected a pod but got " + parser.getCurrentToken());
+				}
+				return podStatusDecoder.readPod(parser);
+			}
+		}
+		catch (IOException e) {
+			throw KubernetesClientException.launderThrowable(e);
+		}
+	}
+
+	/**
+	 * List resources page by page, reading the items of each page with a streaming parser and passing
+	 * them to an action as they are read, so no response body is held in memory as a whole. Whether the
+	 * items are is up to the action: the variants returning a list collect them all, so their memory use
+	 * still grows with the number of items. The pages are requested with the page size of these operations
+	 * and the continue token of the previous page. A cached read only applies to the first page, the API
+	 * server serves the following pages from the same snapshot.
+	 */
+	<T> void list(String api, String resource, String labelSelector, ReadConsistency consistency,
+	              ItemReader<T> itemReader, Consumer<? super T> action) {
+		list(api, resource, labelSelector, consistency, itemReader, action, null);
+	}
+
+	/**
+	 * List resources page by page like {@link #list(String, String, String, ReadConsistency, ItemReader, Consumer)},
+	 * starting over from the first page should the snapshot of a continue token have expired, which the API
+	 * server answers with {@code 410 Gone}. Before starting over, the restart action discards the items
+	 * passed to the action so far. A list starts over at most {@value #MAX_LIST_RESTARTS} times.
+	 *
+	 * @param restart discards the items passed to the action so far, or {@code null} to fail instead of
+	 * starting over
+	 */
+	<T> void list(String api, String resource, String labelSelector, ReadConsistency consistency,
+	              ItemReader<T> itemReader, Consumer<? super T> action, Runnable restart) {
+		String continueToken = null;
+		int restarts = 0;
+		while (true) {
+			HttpUrl.Builder url = resourceUrl(api, resource).addQueryParameter("labelSelector", labelSelector);
+			if (pageSize > 0) {
+				url.addQueryParameter("limit", String.valueOf(pageSize));
+			}
+			if (continueToken != null) {
+				url.addQueryParameter("continue", continueToken);
+			}
+			else {
+				addResourceVersion(url, consistency);
+			}
+			Request request = new Request.Builder().url(url.build()).get().build();
+			try (Response response = httpClient().newCall(request).execute()) {
+				if (response.code() == 410 && continueToken != null && restart != null
+						&& restarts < MAX_LIST_RESTARTS) {
+					restarts++;
+					restart.run();
+					continueToken = null;
+					continue;
+				}
+				checkResponse(request, response);
+				try (JsonParser parser = objectMapper.getFactory().createParser(response.body().byteStream())) {
+					continueToken = readList(parser, itemReader, action);
+				}
+			}
+			catch (IOException e) {
+				throw KubernetesClientException.launderThrowable(e);
+			}
+			if (StringUtils.isEmpty(continueToken)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read one page of a list, passing its items to an action.
+	 *
+	 * @param parser the parser, positioned before the list object
+	 * @param itemReader the reader of the items
+	 * @param action the action to pass each item to
+	 * @return the continue token of the list, or {@code null} if this is the last page
+	 */
+	static <T> String readList(JsonParser parser, ItemReader<T> itemReader, Consumer<? super T> action)
+			throws IOException {
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Expected a list but got " + parser.getCurrentToken());
+		}
+		String continueToken = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					action.accept(itemReader.read(parser));
+				}
+			}
+			else if ("metadata".equals(field) && value == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String metadataField = parser.getCurrentName();
+					parser.nextToken();
+					if ("continue".equals(metadataField)) {
+						continueToken = parser.getValueAsString();
+					}
+					else {
+						parser.skipChildren();
+					}
+				}
+			}
+			else {
+				parser.skipChildren();
+			}
+		}
+		return continueToken;
+	}
+
+	/**
+	 * Create a resource of the given API group in the namespace of the client.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code statefulsets}
+	 * @param body the resource to create, as JSON
+	 * @return the created resource as returned by the API server, as JSON
+	 */
+	JsonNode create(String api, String resource, JsonNode body) {
+		HttpUrl url = resourceUrl(api, resource).build();
+		return readTree(new Request.Builder().url(url).post(RequestBody.create(JSON, body.toString())).build());
+	}
+
+	/**
+	 * Get a resource of the given API group in the namespace of the client.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code deployments}
+	 * @param name the name of the resource
+	 * @return the resource as JSON, or {@code null} if it does not exist
+	 */
+	JsonNode get(String api, String resource, String name) {
+		return get(api, resource, name, ReadConsistency.strong);
+	}
+
+	/**
+	 * Get a resource of the given API group in the namespace of the client, reading with the given consistency.
+	 */
+	JsonNode get(String api, String resource, String name, ReadConsistency consistency) {
+		HttpUrl.Builder url = resourceUrl(api, resource).addPathSegment(name);
+		addResourceVersion(url, consistency);
+		return readTree(new Request.Builder().url(url.build()).get().build(), true);
+	}
+
+	/**
+	 * Apply a JSON merge patch to a resource of the given API group in the namespace of the client. Lists in
+	 * the patch replace the lists of the resource as a whole.
+	 *
+	 * @param api the path of the API group, e.g. {@value #APPS_API}
+	 * @param resource the plural resource name, e.g. {@code deployments}
+	 * @param name the name of the resource
+	 * @param patch the merge patch
+	 * @return the patched resource as JSON, or {@code null} if it does not exist
+	 */
+	JsonNode patch(String api, String resource, String name, JsonNode patch) {
+		HttpUrl url = resourceUrl(api, resource).addPathSegment(name).build();
+		return readTree(new Request.Builder().url(url).patch(RequestBody.create(MERGE_PATCH, patch.toString())).build(), true);
+	}
+
+	/**
+	 * Convert a fabric8 model object, e.g. a {@code PodSpec}, to the JSON the API server expects for it.
+	 */
+	JsonNode toJson(Object value) {
+		return objectMapper.valueToTree(value);
+	}
+
+	HttpUrl.Builder resourceUrl(String resource) {
+		return resourceUrl(CORE_API, resource);
+	}
+
+	HttpUrl.Builder resourceUrl(String api, String resource) {
+		HttpUrl masterUrl = HttpUrl.get(client.getMasterUrl());
+		if (masterUrl == null) {
+			throw new IllegalStateException("Invalid Kubernetes master URL: " + client.getMasterUrl());
+		}
+		HttpUrl.Builder url = masterUrl.newBuilder();
+		for (String segment : api.split("/")) {
+			url.addPathSegment(segment);
+		}
+		return url.addPathSegment("namespaces")
+				.addPathSegment(client.getNamespace())
+				.addPathSegment(resource);
+	}
+
+	static String labelSelector(Map<String, String> labels) {
+		return labels.entrySet().stream()
+				.map(label -> label.getKey() + "=" + label.getValue())
+				.collect(Collectors.joining(","));
+	}
+
+	/**
+	 * Have a read be served from the watch cache of the API server, rather than from etcd, if it may be cached.
+	 */
+	private static void addResourceVersion(HttpUrl.Builder url, ReadConsistency consistency) {
+		if (consistency == ReadConsistency.cached) {
+			url.addQueryParameter("resourceVersion", "0");
+		}
+	}
+
+	private static RequestBody deleteOptions(String propagationPolicy) {
+		return RequestBody.create(JSON,
+				"{\"kind\":\"DeleteOptions\",\"apiVersion\":\"v1\",\"propagationPolicy\":\"" + propagationPolicy + "\"}");
+	}
+
+	private boolean execute(Request request) {
+		try (Response response = httpClient().newCall(request).execute()) {
+			if (response.code() == 404) {
+				return false;
+			}
+			checkResponse(request, response);
+			return true;
+		}
+		catch (IOException e) {
+			throw KubernetesClientException.launderThrowable(e);
+		}
+	}
+
+	private JsonNode readTree(Request request) {
+		return readTree(request, false);
+	}
+
+	private JsonNode readTree(Request request, boolean nullIfNotFound) {
+		try (Response response = httpClient().newCall(request).execute()) {
+			if (nullIfNotFound && response.code() == 404) {
+				return null;
+			}
+			checkResponse(request, response);
+			return objectMapper.readTree(response.body().byteStream());
+		}
+		catch (IOException e) {
+			throw KubernetesClientException.launderThrowable(e);
+		}
+	}
+
+	private static void checkResponse(Request request, Response response) {
+		if (!response.isSuccessful()) {
+			throw new KubernetesClientException(String.format("Failure executing: %s at: %s. Message: %s.",
+					request.method(), request.url(), response.message()), response.code(), null);
+		}
+	}
+
+	private OkHttpClient httpClient() {
+		if (!(client instanceof HttpClientAware)) {
+			throw new IllegalStateException("Kubernetes client does not expose its HTTP client: " + client);
+		}
+		return ((HttpClientAware) client).getHttpClient();
+	}
+
+	/**
+	 * Reads one item of a list, with the parser positioned at the start of its JSON object.
+	 */
+	interface ItemReader<T> {
+
+		T read(JsonParser parser) throws IOException;
+	}
+}
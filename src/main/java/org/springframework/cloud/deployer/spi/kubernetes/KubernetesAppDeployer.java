@@ -16,28 +16,69 @@
 
 package org.springframework.cloud.deployer.spi.kubernetes;
 
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesApiOperations.APPS_API;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesApiOperations.AUTOSCALING_API;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesApiOperations.BACKGROUND_PROPAGATION;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesApiOperations.CORE_API;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesApiOperations.FOREGROUND_PROPAGATION;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.deployer.spi.app.AppDeployer;
 import org.springframework.cloud.deployer.spi.app.AppStatus;
-import org.springframework.cloud.deployer.spi.app.DeploymentState;
 import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
 import org.springframework.cloud.deployer.spi.core.RuntimeEnvironmentInfo;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
 
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.EnvVarBuilder;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
 import io.fabric8.kubernetes.api.model.Pod;
-import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.PodTemplateSpec;
+import io.fabric8.kubernetes.api.model.PodTemplateSpecBuilder;
 import io.fabric8.kubernetes.api.model.ReplicationController;
 import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServicePort;
+import io.fabric8.kubernetes.api.model.ServiceSpec;
 import io.fabric8.kubernetes.api.model.ServiceSpecBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
-import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
 
 /**
  * A deployer that targets Kubernetes.
@@ -51,6 +92,50 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 
 	private static final String SERVER_PORT_KEY = "server.port";
 
+	/**
+	 * Label the StatefulSet controller puts on each of its pods, holding the ordinal of the pod.
+	 */
+	private static final String POD_INDEX_LABEL = "apps.kubernetes.io/pod-index";
+
+	/**
+	 * Label on the pods of an app that has a horizontal pod autoscaler, so that only the status of such apps
+	 * needs to look the autoscaler up.
+	 */
+	private static final String SPRING_AUTOSCALED_KEY = "spring-autoscaled";
+
+	/**
+	 * How often to check a LoadBalancer service that is being waited for once its watch has been closed.
+	 */
+	private static final long LOAD_BALANCER_POLL_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * How often to check whether a controller deleted in the foreground is gone.
+	 */
+	private static final long DELETION_POLL_INTERVAL_MILLIS = 500;
+
+	/**
+	 * How long to wait for a controller deleted in the foreground to be gone before considering it deleted.
+	 */
+	private static final long DELETION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+	/**
+	 * How long the attributes read from the autoscaler of an app are reused. The autoscaler only updates
+	 * its replica counts every 15 seconds by default, so reading it on every status call gains little.
+	 */
+	private static final long AUTOSCALER_ATTRIBUTES_TTL_MILLIS = 10000;
+
+	private static final int AUTOSCALER_CACHE_SIZE = 512;
+
+	private final KubernetesApiOperations apiOperations;
+
+	private final ScheduledThreadPoolExecutor undeployExecutor;
+
+	private final SingleFlight<String, AppStatus> statusFlight = new SingleFlight<>();
+
+	private final LruCache<String, AutoscalerAttributes> autoscalerCache = new LruCache<>(AUTOSCALER_CACHE_SIZE);
+
+	private KubernetesPodCache podCache;
+
 	@Autowired
 	public KubernetesAppDeployer(KubernetesDeployerProperties properties,
 	                             KubernetesClient client) {
@@ -63,17 +148,39 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 		this.properties = properties;
 		this.client = client;
 		this.containerFactory = containerFactory;
+		this.apiOperations = new KubernetesApiOperations(client, properties.getListPageSize());
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("kubernetes-undeployer-");
+		threadFactory.setDaemon(true);
+		this.undeployExecutor = new ScheduledThreadPoolExecutor(Math.max(1, properties.getUndeployParallelism()),
+				threadFactory);
+		this.undeployExecutor.setKeepAliveTime(60, TimeUnit.SECONDS);
+		this.undeployExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Set the pod cache to serve status requests from while it is synced.
+	 *
+	 * @param podCache the pod cache, or {@code null} to always read status from the API server
+	 */
+	public void setPodCache(KubernetesPodCache podCache) {
+		this.podCache = podCache;
 	}
 
 	@Override
 	public String deploy(AppDeploymentRequest request) {
+		return metrics.time("deploy", () -> doDeploy(request));
+	}
 
+	private String doDeploy(AppDeploymentRequest request) {
 		String appId = createDeploymentId(request);
 		logger.debug(String.format("Deploying app: %s", appId));
 
 		try {
-			AppStatus status = status(appId);
-			if (!status.getState().equals(DeploymentState.unknown)) {
+			// resolve all settings once up front, so that an invalid request fails before anything is created
+			// and everything created for the app is built from the same settings
+			ResolvedKubernetesDeploymentSettings settings = resolveSettings(request);
+
+			if (exists(appId, ReadConsistency.strong)) {
 				throw new IllegalStateException(String.format("App '%s' is already deployed", appId));
 			}
 
@@ -85,22 +192,61 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 			String indexedProperty = request.getDeploymentProperties().get(INDEXED_PROPERTY_KEY);
 			boolean indexed = (indexedProperty != null) ? Boolean.valueOf(indexedProperty).booleanValue() : false;
 
-			if (indexed) {
+			CreatedResources created = new CreatedResources();
+			if (indexed && properties.isStatefulSetForIndexedApps()) {
+				if (settings.isCreateLoadBalancer() || settings.isCreateNodePort()) {
+					// the stateful set is only given a headless service, which can't be exposed outside the cluster
+					throw new IllegalArgumentException(
+							"Indexed apps deployed as a stateful set can't be exposed with a LoadBalancer or NodePort");
+				}
+				logger.debug(String.format("Creating stateful set: %s with %d replicas", appId, count));
+				createStatefulSet(appId, request, settings, externalPort, count, created);
+			}
+			else if (indexed) {
+				if (settings.isAutoscaled()) {
+					throw new IllegalArgumentException(
+							"Indexed apps can only be autoscaled when they are deployed as a stateful set");
+				}
+				List<Runnable> instances = new ArrayList<>();
 				for (int index=0 ; index < count ; index++) {
-					String indexedId = appId + "-" + index;
-					Map<String, String> idMap = createIdMap(appId, request, index);
-					logger.debug(String.format("Creating service: %s on %d with index %d", appId, externalPort, index));
-					createService(indexedId, request, idMap, externalPort);
-					logger.debug(String.format("Creating repl controller: %s with index %d", appId, index));
-					createReplicationController(indexedId, request, idMap, externalPort, 1, index);
+					final int instanceIndex = index;
+					instances.add(() ->
+							createIndexedInstance(appId, request, settings, instanceIndex, externalPort, created));
+				}
+				try {
+					invokeAll(instances, properties.getDeployParallelism());
+				}
+				catch (RuntimeException e) {
+					// an instance that already exists belongs to another deploy of the app, which is left alone
+					if (!created.hasConflictingController()) {
+						cleanupPartialDeployment(appId, created);
+					}
+					throw e;
 				}
 			}
 			else {
 				Map<String, String> idMap = createIdMap(appId, request, null);
-				logger.debug(String.format("Creating service: %s on {}", appId, externalPort));
-				createService(appId, request, idMap, externalPort);
-				logger.debug(String.format("Creating repl controller: %s", appId));
-				createReplicationController(appId, request, idMap, externalPort, count, null);
+				ServiceSpec serviceSpec = createServiceSpec(settings, idMap, externalPort);
+				OwnerReference owner;
+				if (properties.isUseDeployments()) {
+					logger.debug(String.format("Creating deployment: %s", appId));
+					JsonNode deployment = created.controller(Controller.DEPLOYMENT, appId, () ->
+							apiOperations.create(APPS_API, Controller.DEPLOYMENT.resource,
+									buildDeployment(appId, request, settings, externalPort, count)));
+					owner = ownerReference("apps/v1", "Deployment", appId, uid(deployment));
+				}
+				else {
+					logger.debug(String.format("Creating repl controller: %s", appId));
+					ReplicationController rc = created.controller(Controller.REPLICATION_CONTROLLER, appId, () ->
+							createReplicationController(appId, request, settings, idMap, externalPort, count, null));
+					owner = ownerReference(rc);
+				}
+				createDependents(appId, created, () -> {
+					logger.debug(String.format("Creating service: %s on %d", appId, externalPort));
+					createService(appId, idMap, serviceSpec, owner);
+					created.add(CORE_API, "services", appId);
+					createAutoscaler(appId, request, settings, owner, created);
+				});
 			}
 
 			return appId;
@@ -110,87 +256,278 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 		}
 	}
 
-	@Override
-	public void undeploy(String appId) {
-		logger.debug(String.format("Undeploying app: %s", appId));
-		AppStatus status = status(appId);
-		if (status.getState().equals(DeploymentState.unknown)) {
-			throw new IllegalStateException(String.format("App '%s' is not deployed", appId));
+	/**
+	 * Update a deployed app in place by patching the pod template of its deployment, which has Kubernetes
+	 * roll the pods over according to the rolling update settings of the request. Old pods keep running
+	 * until their replacements are ready. Requires {@link KubernetesDeployerProperties#isUseDeployments()}.
+	 *
+	 * @param request the app deployment request to update the app to
+	 * @return the id of the updated app
+	 */
+	public String update(AppDeploymentRequest request) {
+		String appId = createDeploymentId(request);
+		logger.debug(String.format("Updating app: %s", appId));
+		try {
+			if (!properties.isUseDeployments()) {
+				throw new IllegalStateException("Apps can only be updated in place when they are deployed as deployments");
+			}
+			ResolvedKubernetesDeploymentSettings settings = resolveSettings(request);
+			ObjectNode patch = JsonNodeFactory.instance.objectNode();
+			patch.set("spec", buildDeploymentUpdate(appId, request, settings, configureExternalPort(request)));
+			if (apiOperations.patch(APPS_API, Controller.DEPLOYMENT.resource, appId, patch) == null) {
+				throw new IllegalStateException(String.format("App '%s' is not deployed", appId));
+			}
+			return appId;
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+			throw e;
 		}
-		List<ReplicationController> apps =
-			client.replicationControllers().withLabel(SPRING_APP_KEY, appId).list().getItems();
-		if (apps != null) {
-			for (ReplicationController rc : apps) {
-				String appIdToDelete = rc.getMetadata().getName();
-				logger.debug(String.format("Deleting svc, rc and pods for: %s", appIdToDelete));
+	}
 
-				Service svc = client.services().withName(appIdToDelete).get();
-				try {
-					if (svc != null && "LoadBalancer".equals(svc.getSpec().getType())) {
-						int tries = 0;
-						int maxWait = properties.getMinutesToWaitForLoadBalancer() * 6; // we check 6 times per minute
-						while (tries++ < maxWait) {
-							if (svc.getStatus() != null && svc.getStatus().getLoadBalancer() != null &&
-									svc.getStatus().getLoadBalancer().getIngress() != null &&
-									svc.getStatus().getLoadBalancer().getIngress().isEmpty()) {
-								if (tries % 6 == 0) {
-									logger.warn("Waiting for LoadBalancer to complete before deleting it ...");
-								}
-								logger.debug(String.format("Waiting for LoadBalancer, try %d", tries));
-								try {
-									Thread.sleep(10000L);
-								} catch (InterruptedException e) {
-								}
-								svc = client.services().withName(appIdToDelete).get();
-							} else {
-								break;
-							}
-						}
-						logger.debug(String.format("LoadBalancer Ingress: %s",
-								svc.getStatus().getLoadBalancer().getIngress().toString()));
-					}
-					Boolean svcDeleted = client.services().withName(appIdToDelete).delete();
-					logger.debug(String.format("Deleted service for: %s %b", appIdToDelete, svcDeleted));
-					Boolean rcDeleted = client.replicationControllers().withName(appIdToDelete).delete();
-					logger.debug(String.format("Deleted replication controller for: %s %b", appIdToDelete, rcDeleted));
-					Map<String, String> selector = new HashMap<>();
-					selector.put(SPRING_APP_KEY, appIdToDelete);
-					FilterWatchListDeletable<Pod, PodList, Boolean, Watch, Watcher<Pod>> podsToDelete =
-							client.pods().withLabels(selector);
-					if (podsToDelete != null && podsToDelete.list().getItems() != null) {
-						Boolean podDeleted = podsToDelete.delete();
-						logger.debug(String.format("Deleted pods for: %s %b", appIdToDelete, podDeleted));
-					} else {
-						logger.debug(String.format("No pods to delete for: %s", appIdToDelete));
+	/**
+	 * Change the number of instances of a deployed app without redeploying it. The replicas of the controller
+	 * of the app are patched in place. For an indexed app deployed as a replication controller and service per
+	 * instance, the instances with the highest indexes are removed, or new instances are created as copies of
+	 * the instance with the lowest index.
+	 *
+	 * @param appId the id of the app
+	 * @param count the number of instances to scale to
+	 */
+	public void scale(String appId, int count) {
+		logger.debug(String.format("Scaling app: %s to %d instances", appId, count));
+		Assert.isTrue(count >= 0, "The instance count must not be negative");
+		try {
+			List<ReplicationController> rcs = listReplicationControllers(SPRING_APP_KEY, appId);
+			if (rcs.isEmpty()) {
+				for (Controller controller : controllers()) {
+					if (controller != Controller.REPLICATION_CONTROLLER
+							&& apiOperations.patch(controller.api, controller.resource, appId, replicasPatch(count)) != null) {
+						return;
 					}
-				} catch (RuntimeException e) {
-					logger.error(e.getMessage(), e);
-					throw e;
 				}
+				throw new IllegalStateException(String.format("App '%s' is not deployed", appId));
+			}
+			if (rcs.size() == 1 && appId.equals(rcs.get(0).getMetadata().getName())) {
+				apiOperations.patch(CORE_API, Controller.REPLICATION_CONTROLLER.resource, appId, replicasPatch(count));
+				return;
 			}
+			scaleIndexed(appId, rcs, count);
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+			throw e;
 		}
 	}
 
+	@Override
+	public void undeploy(String appId) {
+		metrics.time("undeploy", () -> join(undeployAsync(appId)));
+	}
+
+	/**
+	 * Start undeploying an app and return without waiting for it to complete. The instances of the app
+	 * are removed concurrently, and waiting for LoadBalancer services to complete does not occupy a thread.
+	 * Each instance is removed by deleting its replication controller in the foreground, having the garbage
+	 * collector delete its pods and service first. An app deployed as a deployment or stateful set is removed
+	 * by deleting that instead.
+	 *
+	 * @param appId the id of the app to undeploy
+	 * @return a future completing once everything of the app has been deleted, so that it can be deployed again
+	 */
+	public CompletableFuture<Void> undeployAsync(String appId) {
+		logger.debug(String.format("Undeploying app: %s", appId));
+		// the replication controllers are needed for the undeploy anyway, so they double as the existence check
+		List<ReplicationController> apps = listReplicationControllers(SPRING_APP_KEY, appId);
+		if (apps.isEmpty()) {
+			for (Controller controller : controllers()) {
+				if (controller != Controller.REPLICATION_CONTROLLER
+						&& apiOperations.get(controller.api, controller.resource, appId) != null) {
+					return teardown(controller, appId, client.services().withName(appId).get());
+				}
+			}
+			throw new IllegalStateException(String.format("App '%s' is not deployed", appId));
+		}
+		Map<String, Service> services = new HashMap<>();
+		for (Service svc : listServices(SPRING_APP_KEY, appId)) {
+			services.put(svc.getMetadata().getName(), svc);
+		}
+		List<CompletableFuture<Void>> teardowns = new ArrayList<>();
+		for (ReplicationController rc : apps) {
+			String appIdToDelete = rc.getMetadata().getName();
+			teardowns.add(teardown(Controller.REPLICATION_CONTROLLER, appIdToDelete, services.get(appIdToDelete)));
+		}
+		return CompletableFuture.allOf(teardowns.toArray(new CompletableFuture[teardowns.size()]));
+	}
+
 	@Override
 	public AppStatus status(String appId) {
+		return metrics.time("status", () -> doStatus(appId));
+	}
+
+	private AppStatus doStatus(String appId) {
+		if (podCache != null && podCache.isSynced()) {
+			List<Pod> pods = podCache.getPods(appId);
+			AppStatus status = buildAppStatus(appId, pods, autoscalerAttributes(Collections.singleton(appId), pods)
+					.get(appId));
+			logger.debug(String.format("Status for app: %s from pod cache is %s", appId, status));
+			return status;
+		}
+		// concurrent callers asking for the same app share a single read
+		return statusFlight.execute(appId, () -> readStatus(appId));
+	}
+
+	/**
+	 * @return the number of {@link #status(String)} calls that shared the read of a concurrent call for the
+	 * same app instead of reading from the API server themselves
+	 */
+	public long getCoalescedStatusRequests() {
+		return statusFlight.getCoalesced();
+	}
+
+	private AppStatus readStatus(String appId) {
 		Map<String, String> selector = new HashMap<>();
 		selector.put(SPRING_APP_KEY, appId);
-		PodList list = client.pods().withLabels(selector).list();
+		List<Pod> pods = apiOperations.listPodStatuses(KubernetesApiOperations.labelSelector(selector),
+				properties.getStatusReadConsistency());
+		metrics.podListSize(pods.size());
 		if (logger.isDebugEnabled()) {
 			logger.debug(String.format("Building AppStatus for app: %s", appId));
-			if (list != null && list.getItems() != null) {
-				logger.debug(String.format("Pods for appId %s: %d", appId, list.getItems().size()));
-				for (Pod pod : list.getItems()) {
-					logger.debug(String.format("Pod: %s", pod.getMetadata().getName()));
-				}
+			logger.debug(String.format("Pods for appId %s: %d", appId, pods.size()));
+			for (Pod pod : pods) {
+				logger.debug(String.format("Pod: %s", pod.getMetadata().getName()));
 			}
 		}
-		AppStatus status = buildAppStatus(appId, list);
+		AppStatus status = buildAppStatus(appId, pods, autoscalerAttributes(Collections.singleton(appId), pods)
+				.get(appId));
 		logger.debug(String.format("Status for app: %s is %s", appId, status));
 
 		return status;
 	}
 
+	/**
+	 * Check whether an app is deployed, i.e. whether any replication controller (or deployment or stateful
+	 * set, if enabled) carries its app id. Unlike {@link #status(String)} this asks the API server for at most
+	 * one controller of each kind and does not look at the pods of the app at all. The check is read with the
+	 * configured {@link KubernetesDeployerProperties#getExistsReadConsistency() consistency}, while the check
+	 * guarding {@link #deploy(AppDeploymentRequest)} is always a strong read.
+	 *
+	 * @param appId the id of the app
+	 * @return whether the app is deployed
+	 */
+	public boolean exists(String appId) {
+		return exists(appId, properties.getExistsReadConsistency());
+	}
+
+	/**
+	 * Check whether an app is deployed, reading with the given consistency.
+	 *
+	 * @param appId the id of the app
+	 * @param consistency the consistency to read the controllers with
+	 * @return whether the app is deployed
+	 */
+	protected boolean exists(String appId, ReadConsistency consistency) {
+		Map<String, String> selector = new HashMap<>();
+		selector.put(SPRING_APP_KEY, appId);
+		for (Controller controller : controllers()) {
+			if (apiOperations.exists(controller.api, controller.resource, selector, consistency)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the statuses of several apps using a single list of pods, rather than one list per app.
+	 *
+	 * @param appIds the ids of the apps
+	 * @return the statuses keyed by app id, in the iteration order of the given ids
+	 */
+	public Map<String, AppStatus> statuses(Collection<String> appIds) {
+		Set<String> ids = new LinkedHashSet<>(appIds);
+		if (ids.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		List<Pod> pods;
+		if (podCache != null && podCache.isSynced()) {
+			pods = new ArrayList<>();
+			for (String id : ids) {
+				pods.addAll(podCache.getPods(id));
+			}
+		}
+		else {
+			String selector = SPRING_MARKER_KEY + "=" + SPRING_MARKER_VALUE + ","
+					+ SPRING_APP_KEY + " in (" + String.join(",", ids) + ")";
+			pods = apiOperations.listPodStatuses(selector, properties.getStatusReadConsistency());
+			metrics.podListSize(pods.size());
+		}
+		logger.debug(String.format("Building AppStatus for %d apps from %d pods", ids.size(), pods.size()));
+		return buildAppStatuses(ids, pods, autoscalerAttributes(ids, pods));
+	}
+
+	/**
+	 * Get the statuses of all apps deployed with the given group id, using one list of controllers of each
+	 * kind and one list of pods for the whole group.
+	 *
+	 * @param groupId the group id the apps were deployed with
+	 * @return the statuses keyed by app id
+	 */
+	public Map<String, AppStatus> statusOfGroup(String groupId) {
+		Map<String, String> selector = new HashMap<>();
+		selector.put(SPRING_GROUP_KEY, groupId);
+		Set<String> appIds = new LinkedHashSet<>();
+		for (Controller controller : controllers()) {
+			for (JsonNode item : apiOperations.list(controller.api, controller.resource, selector,
+					properties.getStatusReadConsistency())) {
+				appIds.add(item.path("metadata").path("labels").path(SPRING_APP_KEY).asText());
+			}
+		}
+		if (appIds.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		if (podCache != null && podCache.isSynced()) {
+			return statuses(appIds);
+		}
+		List<Pod> pods = apiOperations.listPodStatuses(KubernetesApiOperations.labelSelector(selector),
+				properties.getStatusReadConsistency());
+		metrics.podListSize(pods.size());
+		return buildAppStatuses(appIds, pods, autoscalerAttributes(appIds, pods));
+	}
+
+	/**
+	 * Undeploy all apps deployed with the given group id. The controllers of the whole group are deleted
+	 * with a single collection delete per kind, leaving their pods and services to the garbage collector.
+	 *
+	 * @param groupId the group id the apps were deployed with
+	 */
+	public void undeployGroup(String groupId) {
+		logger.debug(String.format("Undeploying group: %s", groupId));
+		List<Service> services = listServices(SPRING_GROUP_KEY, groupId);
+		if (services.isEmpty()) {
+			throw new IllegalStateException(String.format("Group '%s' is not deployed", groupId));
+		}
+		Map<String, String> selector = new HashMap<>();
+		selector.put(SPRING_GROUP_KEY, groupId);
+		List<CompletableFuture<Void>> serviceDeletions = new ArrayList<>();
+		for (Service svc : services) {
+			String serviceName = svc.getMetadata().getName();
+			serviceDeletions.add(awaitLoadBalancer(serviceName, svc).thenRunAsync(() -> {
+				if (!hasOwner(svc)) {
+					Boolean svcDeleted = client.services().withName(serviceName).delete();
+					logger.debug(String.format("Deleted service for: %s %b", serviceName, svcDeleted));
+				}
+			}, undeployExecutor));
+		}
+		join(CompletableFuture.allOf(serviceDeletions.toArray(new CompletableFuture[serviceDeletions.size()])));
+		try {
+			for (Controller controller : controllers()) {
+				apiOperations.deleteCollection(controller.api, controller.resource, selector, BACKGROUND_PROPAGATION);
+				logger.debug(String.format("Deleted %s for group: %s", controller.resource, groupId));
+			}
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+			throw e;
+		}
+	}
+
 	@Override
 	public RuntimeEnvironmentInfo environmentInfo() {
 		return super.createRuntimeEnvironmentInfo(AppDeployer.class, this.getClass());
@@ -219,8 +556,591 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 		return deploymentId.replace('.', '-').toLowerCase();
 	}
 
+	/**
+	 * Create the service and replication controller of one instance of an indexed app, recording them in the
+	 * resources created by the deploy.
+	 */
+	protected void createIndexedInstance(String appId, AppDeploymentRequest request,
+	                                     ResolvedKubernetesDeploymentSettings settings, int index, int externalPort,
+	                                     CreatedResources created) {
+		String indexedId = appId + "-" + index;
+		Map<String, String> idMap = createIdMap(appId, request, index);
+		ServiceSpec serviceSpec = createServiceSpec(settings, idMap, externalPort);
+		logger.debug(String.format("Creating repl controller: %s with index %d", appId, index));
+		ReplicationController rc = created.controller(Controller.REPLICATION_CONTROLLER, indexedId, () ->
+				createReplicationController(indexedId, request, settings, idMap, externalPort, 1, index));
+		logger.debug(String.format("Creating service: %s on %d with index %d", appId, externalPort, index));
+		createService(indexedId, idMap, serviceSpec, ownerReference(rc));
+		created.add(CORE_API, "services", indexedId);
+	}
+
+	/**
+	 * Create all instances of an indexed app as a single stateful set and a headless service owned by it.
+	 */
+	protected void createStatefulSet(String appId, AppDeploymentRequest request,
+	                                 ResolvedKubernetesDeploymentSettings settings, int externalPort, int replicas,
+	                                 CreatedResources created) {
+		JsonNode statefulSet = created.controller(Controller.STATEFUL_SET, appId, () ->
+				apiOperations.create(APPS_API, Controller.STATEFUL_SET.resource,
+						buildStatefulSet(appId, request, settings, externalPort, replicas)));
+		ServiceSpec serviceSpec = new ServiceSpecBuilder()
+				.withClusterIP("None")
+				.withSelector(createIdMap(appId, request, null))
+				.addNewPort()
+					.withPort(externalPort)
+				.endPort()
+				.build();
+		logger.debug(String.format("Creating headless service: %s on %d", appId, externalPort));
+		OwnerReference owner = ownerReference("apps/v1", "StatefulSet", appId, uid(statefulSet));
+		createDependents(appId, created, () -> {
+			createService(appId, createIdMap(appId, request, null), serviceSpec, owner);
+			created.add(CORE_API, "services", appId);
+			createAutoscaler(appId, request, settings, owner, created);
+		});
+	}
+
+	/**
+	 * Create the resources owned by the controller of an app, removing what the deploy created again should that
+	 * fail, so that a failed deploy does not leave a controller behind that blocks deploying the app again.
+	 */
+	private void createDependents(String appId, CreatedResources created, Runnable creation) {
+		try {
+			creation.run();
+		}
+		catch (RuntimeException e) {
+			cleanupPartialDeployment(appId, created);
+			throw e;
+		}
+	}
+
+	/**
+	 * Create a horizontal pod autoscaler for the controller of an app if the deployment properties ask for it.
+	 * The autoscaler is owned by the controller, so that it is garbage collected when the app is undeployed.
+	 */
+	protected void createAutoscaler(String appId, AppDeploymentRequest request,
+	                                ResolvedKubernetesDeploymentSettings settings, OwnerReference controller,
+	                                CreatedResources created) {
+		if (settings.isAutoscaled()) {
+			logger.debug(String.format("Creating autoscaler: %s", appId));
+			apiOperations.create(AUTOSCALING_API, "horizontalpodautoscalers",
+					buildAutoscaler(appId, request, settings, controller));
+			created.add(AUTOSCALING_API, "horizontalpodautoscalers", appId);
+		}
+	}
+
+	/**
+	 * Build the {@code autoscaling/v2} horizontal pod autoscaler of an app from the
+	 * {@code spring.cloud.deployer.kubernetes.autoscaling.*} deployment properties: {@code min} and {@code max}
+	 * replicas, {@code targetCpuUtilization} in percent and {@code metrics}, a comma separated list of
+	 * {@code name=averageValue} targets for custom per-pod metrics.
+	 */
+	ObjectNode buildAutoscaler(String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
+	                           OwnerReference controller) {
+		Map<String, String> labels = new HashMap<>(createIdMap(appId, request, null));
+		labels.put(SPRING_MARKER_KEY, SPRING_MARKER_VALUE);
+
+		ObjectNode autoscaler = JsonNodeFactory.instance.objectNode();
+		autoscaler.put("apiVersion", "autoscaling/v2").put("kind", "HorizontalPodAutoscaler");
+		ObjectNode metadata = autoscaler.putObject("metadata");
+		metadata.put("name", appId);
+		metadata.set("labels", apiOperations.toJson(labels));
+		metadata.putArray("ownerReferences").add(apiOperations.toJson(controller));
+		ObjectNode spec = autoscaler.putObject("spec");
+		spec.putObject("scaleTargetRef")
+				.put("apiVersion", controller.getApiVersion())
+				.put("kind", controller.getKind())
+				.put("name", controller.getName());
+		spec.put("minReplicas", settings.getAutoscalingMin() != null ? settings.getAutoscalingMin() : 1);
+		spec.put("maxReplicas", settings.getAutoscalingMax());
+		if (settings.getAutoscalingTargetCpuUtilization() != null) {
+			ObjectNode resource = spec.withArray("metrics").addObject().put("type", "Resource").putObject("resource");
+			resource.put("name", "cpu");
+			resource.putObject("target")
+					.put("type", "Utilization")
+					.put("averageUtilization", settings.getAutoscalingTargetCpuUtilization());
+		}
+		for (Map.Entry<String, String> metric : settings.getAutoscalingMetrics().entrySet()) {
+			ObjectNode pods = spec.withArray("metrics").addObject().put("type", "Pods").putObject("pods");
+			pods.putObject("metric").put("name", metric.getKey());
+			pods.putObject("target").put("type", "AverageValue").put("averageValue", metric.getValue());
+		}
+		return autoscaler;
+	}
+
+	private List<ReplicationController> listReplicationControllers(String labelKey, String labelValue) {
+		return apiOperations.list(CORE_API, Controller.REPLICATION_CONTROLLER.resource,
+				Collections.singletonMap(labelKey, labelValue), ReplicationController.class);
+	}
+
+	private List<Service> listServices(String labelKey, String labelValue) {
+		return apiOperations.list(CORE_API, "services", Collections.singletonMap(labelKey, labelValue), Service.class);
+	}
+
+	/**
+	 * Get the attributes of the autoscalers of those of the given apps that have one, as told by the
+	 * {@value #SPRING_AUTOSCALED_KEY} label of their pods. Attributes read less than
+	 * {@value #AUTOSCALER_ATTRIBUTES_TTL_MILLIS} ms ago are reused, the others are read with a single get
+	 * for one app or a single list for several.
+	 *
+	 * @return the attributes keyed by app id
+	 */
+	private Map<String, Map<String, String>> autoscalerAttributes(Collection<String> appIds, List<Pod> pods) {
+		Set<String> autoscaled = new LinkedHashSet<>();
+		for (Pod pod : pods) {
+			Map<String, String> labels = pod.getMetadata().getLabels();
+			if (labels != null && labels.containsKey(SPRING_AUTOSCALED_KEY) && appIds.contains(labels.get(SPRING_APP_KEY))) {
+				autoscaled.add(labels.get(SPRING_APP_KEY));
+			}
+		}
+		Map<String, Map<String, String>> attributes = new HashMap<>();
+		List<String> expired = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		for (String appId : autoscaled) {
+			AutoscalerAttributes cached = autoscalerCache.get(appId);
+			if (cached == null || now - cached.readAt >= AUTOSCALER_ATTRIBUTES_TTL_MILLIS) {
+				expired.add(appId);
+			}
+			else if (cached.attributes != null) {
+				attributes.put(appId, cached.attributes);
+			}
+		}
+		if (expired.isEmpty()) {
+			return attributes;
+		}
+		Map<String, JsonNode> autoscalers = new HashMap<>();
+		if (expired.size() == 1) {
+			JsonNode autoscaler = apiOperations.get(AUTOSCALING_API, "horizontalpodautoscalers", expired.get(0),
+					properties.getStatusReadConsistency());
+			autoscalers.put(expired.get(0), autoscaler);
+		}
+		else {
+			String selector = SPRING_APP_KEY + " in (" + String.join(",", expired) + ")";
+			for (JsonNode autoscaler : apiOperations.list(AUTOSCALING_API, "horizontalpodautoscalers", selector,
+					properties.getStatusReadConsistency())) {
+				autoscalers.put(autoscaler.path("metadata").path("name").asText(), autoscaler);
+			}
+		}
+		for (String appId : expired) {
+			AutoscalerAttributes read = new AutoscalerAttributes(now, autoscalers.get(appId));
+			autoscalerCache.put(appId, read);
+			if (read.attributes != null) {
+				attributes.put(appId, read.attributes);
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * @return the labels of the pods of an app with the given id labels
+	 */
+	private Map<String, String> podLabels(Map<String, String> idMap, ResolvedKubernetesDeploymentSettings settings) {
+		Map<String, String> labels = new HashMap<>(idMap);
+		labels.put(SPRING_MARKER_KEY, SPRING_MARKER_VALUE);
+		if (settings.isAutoscaled()) {
+			labels.put(SPRING_AUTOSCALED_KEY, "true");
+		}
+		return labels;
+	}
+
+	/**
+	 * Build the {@code apps/v1} stateful set of an indexed app. Its pods are named after their ordinal and
+	 * take their instance index from the {@value #POD_INDEX_LABEL} label the StatefulSet controller puts on them.
+	 */
+	ObjectNode buildStatefulSet(String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
+	                            int externalPort, int replicas) {
+		Map<String, String> idMap = createIdMap(appId, request, null);
+		Map<String, String> labels = podLabels(idMap, settings);
+		PodSpec podSpec = createPodSpec(appId, request, settings, externalPort, null, false);
+		for (Container container : podSpec.getContainers()) {
+			container.getEnv().add(podIndexEnvVar(INSTANCE_INDEX_PROPERTY_KEY));
+			container.getEnv().add(podIndexEnvVar("SPRING_APPLICATION_INDEX"));
+		}
+
+		ObjectNode statefulSet = newResource("StatefulSet", appId, labels);
+		ObjectNode spec = statefulSet.putObject("spec");
+		// instances of an indexed app don't depend on each other, so don't start them one ordinal at a time
+		spec.put("replicas", replicas).put("serviceName", appId).put("podManagementPolicy", "Parallel");
+		spec.putObject("selector").set("matchLabels", apiOperations.toJson(idMap));
+		spec.set("template", podTemplate(labels, podSpec));
+		return statefulSet;
+	}
+
+	/**
+	 * Build the {@code apps/v1} deployment of an app that is not indexed.
+	 */
+	ObjectNode buildDeployment(String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
+	                           int externalPort, int replicas) {
+		Map<String, String> idMap = createIdMap(appId, request, null);
+		Map<String, String> labels = podLabels(idMap, settings);
+		ObjectNode deployment = newResource("Deployment", appId, labels);
+		ObjectNode spec = deployment.putObject("spec");
+		spec.put("replicas", replicas);
+		spec.putObject("selector").set("matchLabels", apiOperations.toJson(idMap));
+		spec.setAll(buildDeploymentUpdate(appId, request, settings, externalPort));
+		return deployment;
+	}
+
+	/**
+	 * Build the part of the spec of a deployment that an in-place update replaces: the rolling update
+	 * strategy, the minimum ready time and the pod template.
+	 */
+	ObjectNode buildDeploymentUpdate(String appId, AppDeploymentRequest request,
+	                                 ResolvedKubernetesDeploymentSettings settings, int externalPort) {
+		Map<String, String> labels = podLabels(createIdMap(appId, request, null), settings);
+		ObjectNode spec = JsonNodeFactory.instance.objectNode();
+		spec.put("minReadySeconds", settings.getMinReadySeconds());
+		ObjectNode strategy = spec.putObject("strategy");
+		strategy.put("type", "RollingUpdate");
+		ObjectNode rollingUpdate = strategy.putObject("rollingUpdate");
+		rollingUpdate.set("maxSurge", intOrPercent(settings.getMaxSurge()));
+		rollingUpdate.set("maxUnavailable", intOrPercent(settings.getMaxUnavailable()));
+		spec.set("template", podTemplate(labels, createPodSpec(appId, request, settings, externalPort, null, false)));
+		return spec;
+	}
+
+	private static JsonNode intOrPercent(String value) {
+		return value.endsWith("%") ? TextNode.valueOf(value) : IntNode.valueOf(Integer.parseInt(value));
+	}
+
+	private ObjectNode newResource(String kind, String name, Map<String, String> labels) {
+		ObjectNode resource = JsonNodeFactory.instance.objectNode();
+		resource.put("apiVersion", "apps/v1").put("kind", kind);
+		ObjectNode metadata = resource.putObject("metadata");
+		metadata.put("name", name);
+		metadata.set("labels", apiOperations.toJson(labels));
+		return resource;
+	}
+
+	private ObjectNode podTemplate(Map<String, String> labels, PodSpec podSpec) {
+		ObjectNode template = JsonNodeFactory.instance.objectNode();
+		template.putObject("metadata").set("labels", apiOperations.toJson(labels));
+		template.set("spec", apiOperations.toJson(podSpec));
+		return template;
+	}
+
+	private static String uid(JsonNode resource) {
+		return resource.path("metadata").path("uid").asText();
+	}
+
+	private static EnvVar podIndexEnvVar(String name) {
+		return new EnvVarBuilder()
+				.withName(name)
+				.withNewValueFrom()
+					.withNewFieldRef()
+						.withFieldPath("metadata.labels['" + POD_INDEX_LABEL + "']")
+					.endFieldRef()
+				.endValueFrom()
+				.build();
+	}
+
+	/**
+	 * Copy the replication controller of one instance of an indexed app to create the instance with the given
+	 * index, changing the names, labels and index environment variables that differ between instances.
+	 */
+	ReplicationController copyIndexedInstance(ReplicationController template, String appId, int index) {
+		String templateId = template.getMetadata().getName();
+		String indexedId = appId + "-" + index;
+		Map<String, String> idMap = new HashMap<>(template.getSpec().getSelector());
+		idMap.put(SPRING_DEPLOYMENT_KEY, indexedId);
+		PodTemplateSpec podTemplate = new PodTemplateSpecBuilder(template.getSpec().getTemplate()).build();
+		podTemplate.getMetadata().getLabels().put(SPRING_DEPLOYMENT_KEY, indexedId);
+		for (Container container : podTemplate.getSpec().getContainers()) {
+			if (templateId.equals(container.getName())) {
+				container.setName(indexedId);
+			}
+			for (EnvVar env : container.getEnv()) {
+				if (INSTANCE_INDEX_PROPERTY_KEY.equals(env.getName()) || "SPRING_APPLICATION_INDEX".equals(env.getName())) {
+					env.setValue(String.valueOf(index));
+				}
+			}
+		}
+		return new ReplicationControllerBuilder()
+				.withNewMetadata()
+					.withName(indexedId)
+					.withLabels(idMap)
+						.addToLabels(SPRING_MARKER_KEY, SPRING_MARKER_VALUE)
+				.endMetadata()
+				.withNewSpec()
+					.withReplicas(1)
+					.withSelector(idMap)
+					.withTemplate(podTemplate)
+				.endSpec()
+				.build();
+	}
+
+	/**
+	 * Remove the resources a deployment of an app that failed part way through created, dependents first.
+	 * Resources of the app that the deployment did not create are left alone.
+	 */
+	protected void cleanupPartialDeployment(String appId, CreatedResources created) {
+		logger.warn(String.format("Removing partially deployed app: %s", appId));
+		for (CreatedResources.Resource resource : created.newestFirst()) {
+			try {
+				apiOperations.delete(resource.api, resource.resource, resource.name, BACKGROUND_PROPAGATION);
+			}
+			catch (RuntimeException e) {
+				logger.error(String.format("Failed to remove %s %s of partially deployed app: %s",
+						resource.resource, resource.name, appId), e);
+			}
+		}
+	}
+
+	/**
+	 * Scale an indexed app by removing the instances with an index of {@code count} or higher and copying
+	 * the instance with the lowest index to create the missing ones. Scaling to zero keeps the instance with
+	 * the lowest index at zero replicas, so that the app can be scaled out again.
+	 */
+	private void scaleIndexed(String appId, List<ReplicationController> rcs, int count) {
+		Map<Integer, ReplicationController> instances = new TreeMap<>();
+		for (ReplicationController rc : rcs) {
+			String instanceId = rc.getMetadata().getLabels().get(SPRING_DEPLOYMENT_KEY);
+			instances.put(Integer.valueOf(instanceId.substring(appId.length() + 1)), rc);
+		}
+		ReplicationController template = instances.values().iterator().next();
+		String templateId = template.getMetadata().getName();
+		Service templateService = client.services().withName(templateId).get();
+		if (count == 0 || template.getSpec().getReplicas() == 0) {
+			apiOperations.patch(CORE_API, Controller.REPLICATION_CONTROLLER.resource, templateId,
+					replicasPatch(count == 0 ? 0 : 1));
+		}
+
+		List<CompletableFuture<Void>> teardowns = new ArrayList<>();
+		for (Map.Entry<Integer, ReplicationController> instance : instances.entrySet()) {
+			if (instance.getKey() >= count && (count > 0 || instance.getValue() != template)) {
+				String name = instance.getValue().getMetadata().getName();
+				teardowns.add(teardown(Controller.REPLICATION_CONTROLLER, name, client.services().withName(name).get()));
+			}
+		}
+		List<Runnable> creations = new ArrayList<>();
+		for (int index = 0; index < count; index++) {
+			if (!instances.containsKey(index)) {
+				final int instanceIndex = index;
+				creations.add(() -> {
+					logger.debug(String.format("Creating repl controller: %s with index %d", appId, instanceIndex));
+					ReplicationController rc = client.replicationControllers()
+							.create(copyIndexedInstance(template, appId, instanceIndex));
+					if (templateService != null) {
+						Map<String, String> idMap = rc.getSpec().getSelector();
+						ServiceSpec serviceSpec = new ServiceSpecBuilder(templateService.getSpec())
+								.withClusterIP(null)
+								.withSelector(idMap)
+								.build();
+						// node ports are allocated per service, so a copied one would clash
+						serviceSpec.getPorts().forEach(port -> port.setNodePort(null));
+						createService(rc.getMetadata().getName(), idMap, serviceSpec, ownerReference(rc));
+					}
+				});
+			}
+		}
+		invokeAll(creations, properties.getDeployParallelism());
+		join(CompletableFuture.allOf(teardowns.toArray(new CompletableFuture[teardowns.size()])));
+	}
+
+	private static ObjectNode replicasPatch(int replicas) {
+		ObjectNode patch = JsonNodeFactory.instance.objectNode();
+		patch.putObject("spec").put("replicas", replicas);
+		return patch;
+	}
+
+	/**
+	 * Run the given tasks using up to {@code parallelism} threads, failing on the first task that fails.
+	 * Tasks that have not started yet are cancelled and running ones are waited for before the failure
+	 * is rethrown, so no task is still creating resources when the caller cleans up.
+	 */
+	private void invokeAll(List<Runnable> tasks, int parallelism) {
+		if (parallelism <= 1 || tasks.size() <= 1) {
+			tasks.forEach(Runnable::run);
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()),
+				new CustomizableThreadFactory("kubernetes-deployer-"));
+		try {
+			CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+			for (Runnable task : tasks) {
+				completionService.submit(task, null);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				completionService.take().get();
+			}
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for tasks to complete", e);
+		}
+		finally {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Delete the controller of one instance of an app, which has the garbage collector delete its pods and
+	 * service. Services created before the service was owned by the controller are deleted explicitly.
+	 * The controller is deleted in the foreground, so it is only gone once the dependents whose owner reference
+	 * blocks its deletion are: its pods, and the service and autoscaler the deployer created for it. Waiting for
+	 * it to be gone keeps a redeploy of the app from conflicting with a service that is still being deleted.
+	 */
+	private CompletableFuture<Void> teardown(Controller controller, String appIdToDelete, Service svc) {
+		logger.debug(String.format("Deleting %s and its dependents for: %s", controller.resource, appIdToDelete));
+		return awaitLoadBalancer(appIdToDelete, svc)
+				.thenRunAsync(() -> {
+					if (svc != null && !hasOwner(svc)) {
+						Boolean svcDeleted = client.services().withName(appIdToDelete).delete();
+						logger.debug(String.format("Deleted service for: %s %b", appIdToDelete, svcDeleted));
+					}
+					boolean deleted = apiOperations.delete(controller.api, controller.resource, appIdToDelete,
+							FOREGROUND_PROPAGATION);
+					logger.debug(String.format("Deleted %s for: %s %b", controller.resource, appIdToDelete, deleted));
+				}, undeployExecutor)
+				.thenCompose(ignore -> {
+					CompletableFuture<Void> gone = new CompletableFuture<>();
+					awaitDeletion(controller, appIdToDelete,
+							System.currentTimeMillis() + DELETION_TIMEOUT_MILLIS, gone);
+					return gone;
+				});
+	}
+
+	/**
+	 * Poll a controller deleted in the foreground until it is gone, giving up waiting after the deadline.
+	 */
+	private void awaitDeletion(Controller controller, String name, long deadline, CompletableFuture<Void> gone) {
+		try {
+			if (apiOperations.get(controller.api, controller.resource, name) == null) {
+				gone.complete(null);
+				return;
+			}
+		}
+		catch (RuntimeException e) {
+			gone.completeExceptionally(e);
+			return;
+		}
+		if (System.currentTimeMillis() >= deadline) {
+			logger.warn(String.format("Timed out waiting for %s of %s to be deleted", controller.resource, name));
+			gone.complete(null);
+			return;
+		}
+		undeployExecutor.schedule(() -> awaitDeletion(controller, name, deadline, gone),
+				DELETION_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private static boolean hasOwner(Service svc) {
+		return svc.getMetadata().getOwnerReferences() != null && !svc.getMetadata().getOwnerReferences().isEmpty();
+	}
+
+	/**
+	 * A LoadBalancer service that is still being provisioned can't be deleted cleanly, so wait for its
+	 * ingress to be assigned, for at most {@link KubernetesDeployerProperties#getMinutesToWaitForLoadBalancer()}
+	 * minutes. The wait is driven by a watch on the service and does not block a thread. Should the watch
+	 * be closed before the load balancer is ready, the service is polled until then instead.
+	 */
+	CompletableFuture<Void> awaitLoadBalancer(String serviceName, Service svc) {
+		if (svc == null || !"LoadBalancer".equals(svc.getSpec().getType()) || !isLoadBalancerPending(svc)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		logger.warn("Waiting for LoadBalancer to complete before deleting it ...");
+		CompletableFuture<Void> ready = new CompletableFuture<>();
+		Watch watch = watchService(serviceName, new Watcher<Service>() {
+
+			@Override
+			public void eventReceived(Action action, Service service) {
+				if (action == Action.DELETED || !isLoadBalancerPending(service)) {
+					ready.complete(null);
+				}
+			}
+
+			@Override
+			public void onClose(KubernetesClientException cause) {
+				if (!ready.isDone()) {
+					logger.debug(String.format("Watch on LoadBalancer of %s closed, polling it instead", serviceName),
+							cause);
+					pollLoadBalancer(serviceName, ready);
+				}
+			}
+		});
+		ScheduledFuture<?> timeout = undeployExecutor.schedule(() -> {
+			if (ready.complete(null)) {
+				logger.warn(String.format("Timed out waiting for LoadBalancer of %s, deleting it anyway", serviceName));
+			}
+		}, properties.getMinutesToWaitForLoadBalancer(), TimeUnit.MINUTES);
+		ready.whenComplete((result, e) -> {
+			watch.close();
+			timeout.cancel(false);
+			logger.debug(String.format("Done waiting for LoadBalancer of %s", serviceName));
+		});
+		// the load balancer may have completed before the watch was established
+		checkLoadBalancer(serviceName, ready);
+		return ready;
+	}
+
+	private void pollLoadBalancer(String serviceName, CompletableFuture<Void> ready) {
+		undeployExecutor.schedule(() -> {
+			checkLoadBalancer(serviceName, ready);
+			if (!ready.isDone()) {
+				pollLoadBalancer(serviceName, ready);
+			}
+		}, LOAD_BALANCER_POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void checkLoadBalancer(String serviceName, CompletableFuture<Void> ready) {
+		if (ready.isDone()) {
+			return;
+		}
+		try {
+			Service current = getService(serviceName);
+			if (current == null || !isLoadBalancerPending(current)) {
+				ready.complete(null);
+			}
+		}
+		catch (KubernetesClientException e) {
+			logger.debug(String.format("Failed to check LoadBalancer of %s", serviceName), e);
+		}
+	}
+
+	/**
+	 * Watch a service by name.
+	 */
+	Watch watchService(String serviceName, Watcher<Service> watcher) {
+		return client.services().withName(serviceName).watch(watcher);
+	}
+
+	/**
+	 * @return the service with the given name, or {@code null} if there is none
+	 */
+	Service getService(String serviceName) {
+		return client.services().withName(serviceName).get();
+	}
+
+	private static boolean isLoadBalancerPending(Service svc) {
+		return svc.getStatus() != null && svc.getStatus().getLoadBalancer() != null &&
+				svc.getStatus().getLoadBalancer().getIngress() != null &&
+				svc.getStatus().getLoadBalancer().getIngress().isEmpty();
+	}
+
+	private static void join(CompletableFuture<?> future) {
+		try {
+			future.join();
+		}
+		catch (CompletionException e) {
+			RuntimeException cause = e.getCause() instanceof RuntimeException ?
+					(RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+			logger.error(cause.getMessage(), cause);
+			throw cause;
+		}
+	}
+
 	private ReplicationController createReplicationController(
-			String appId, AppDeploymentRequest request,
+			String appId, AppDeploymentRequest request, ResolvedKubernetesDeploymentSettings settings,
 			Map<String, String> idMap, int externalPort, int replicas, Integer instanceIndex) {
 		ReplicationController rc = new ReplicationControllerBuilder()
 				.withNewMetadata()
@@ -233,10 +1153,10 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 					.withSelector(idMap)
 					.withNewTemplate()
 						.withNewMetadata()
-							.withLabels(idMap)
-								.addToLabels(SPRING_MARKER_KEY, SPRING_MARKER_VALUE)
+							.withLabels(podLabels(idMap, settings))
 						.endMetadata()
-						.withSpec(createPodSpec(appId, request, Integer.valueOf(externalPort), instanceIndex, false))
+						.withSpec(createPodSpec(appId, request, settings, Integer.valueOf(externalPort), instanceIndex,
+								false))
 					.endTemplate()
 				.endSpec()
 				.build();
@@ -244,55 +1164,185 @@ public class KubernetesAppDeployer extends AbstractKubernetesDeployer implements
 		return client.replicationControllers().create(rc);
 	}
 
-	private void createService(String appId, AppDeploymentRequest request, Map<String, String> idMap, int externalPort) {
+	private ServiceSpec createServiceSpec(ResolvedKubernetesDeploymentSettings settings, Map<String, String> idMap,
+	                                      int externalPort) {
 		ServiceSpecBuilder spec = new ServiceSpecBuilder();
-		boolean isCreateLoadBalancer = false;
-		String createLoadBalancer = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.createLoadBalancer");
-		String createNodePort = request.getDeploymentProperties().get("spring.cloud.deployer.kubernetes.createNodePort");
-
-		if (createLoadBalancer != null && createNodePort != null) {
-			throw new IllegalArgumentException("Cannot create NodePort and LoadBalancer at the same time.");
-		}
-
-		if (createLoadBalancer == null) {
-			isCreateLoadBalancer = properties.isCreateLoadBalancer();
-		}
-		else {
-			if ("true".equals(createLoadBalancer.toLowerCase())) {
-				isCreateLoadBalancer = true;
-			}
-		}
-
-		if (isCreateLoadBalancer) {
+		if (settings.isCreateLoadBalancer()) {
 			spec.withType("LoadBalancer");
 		}
 
 		ServicePort servicePort = new ServicePort();
 		servicePort.setPort(externalPort);
 
-		if (createNodePort != null) {
+		if (settings.isCreateNodePort()) {
 			spec.withType("NodePort");
-			if (!"true".equals(createNodePort.toLowerCase())) {
-				try {
-					Integer nodePort = Integer.valueOf(createNodePort);
-					servicePort.setNodePort(nodePort);
-				} catch (NumberFormatException e) {
-					throw new IllegalArgumentException(String.format("Invalid value: %s: provided port is not valid.", createNodePort));
-				}
-			}
+			servicePort.setNodePort(settings.getNodePort());
 		}
 
 		spec.withSelector(idMap)
 			.addNewPortLike(servicePort).endPort();
 
+		return spec.build();
+	}
+
+	/**
+	 * Create the service of an app instance, owned by the controller of the instance so that it is
+	 * garbage collected together with the controller.
+	 */
+	private void createService(String appId, Map<String, String> idMap, ServiceSpec spec, OwnerReference owner) {
 		client.services().inNamespace(client.getNamespace()).createNew()
 				.withNewMetadata()
 					.withName(appId)
 					.withLabels(idMap)
 					.addToLabels(SPRING_MARKER_KEY, SPRING_MARKER_VALUE)
+					.addToOwnerReferences(owner)
 					.endMetadata()
-				.withSpec(spec.build())
+				.withSpec(spec)
 				.done();
 	}
 
+	private static OwnerReference ownerReference(ReplicationController rc) {
+		return ownerReference("v1", "ReplicationController", rc.getMetadata().getName(), rc.getMetadata().getUid());
+	}
+
+	/**
+	 * Reference the controller of an app from a resource it owns. The reference blocks the deletion of the
+	 * controller in the foreground until the resource is gone.
+	 */
+	private static OwnerReference ownerReference(String apiVersion, String kind, String name, String uid) {
+		OwnerReference reference = new OwnerReferenceBuilder()
+				.withApiVersion(apiVersion)
+				.withKind(kind)
+				.withName(name)
+				.withUid(uid)
+				.withController(true)
+				.build();
+		// not part of the model of this version of the client, so it is passed through as is
+		reference.setAdditionalProperty("blockOwnerDeletion", true);
+		return reference;
+	}
+
+	/**
+	 * @return the kinds of controller apps may currently be deployed with
+	 */
+	private List<Controller> controllers() {
+		List<Controller> controllers = new ArrayList<>();
+		controllers.add(Controller.REPLICATION_CONTROLLER);
+		if (properties.isUseDeployments()) {
+			controllers.add(Controller.DEPLOYMENT);
+		}
+		if (properties.isStatefulSetForIndexedApps()) {
+			controllers.add(Controller.STATEFUL_SET);
+		}
+		return controllers;
+	}
+
+	/**
+	 * The replica counts of the autoscaler of an app, or {@code null} if it has none, as read at a point in time.
+	 */
+	private static class AutoscalerAttributes {
+
+		private final long readAt;
+
+		private final Map<String, String> attributes;
+
+		AutoscalerAttributes(long readAt, JsonNode autoscaler) {
+			this.readAt = readAt;
+			if (autoscaler == null) {
+				this.attributes = null;
+			}
+			else {
+				Map<String, String> attributes = new HashMap<>();
+				attributes.put("autoscaler_min_replicas", autoscaler.path("spec").path("minReplicas").asText());
+				attributes.put("autoscaler_max_replicas", autoscaler.path("spec").path("maxReplicas").asText());
+				attributes.put("autoscaler_current_replicas", autoscaler.path("status").path("currentReplicas").asText());
+				attributes.put("autoscaler_desired_replicas", autoscaler.path("status").path("desiredReplicas").asText());
+				this.attributes = Collections.unmodifiableMap(attributes);
+			}
+		}
+	}
+
+	/**
+	 * The resources a deploy of an app created, so that a deploy that fails part way through can remove them
+	 * again without touching resources of the app it didn't create, e.g. those of a concurrent deploy of the
+	 * same app. Instances of an indexed app are created concurrently, so the resources are recorded thread safely.
+	 */
+	protected static class CreatedResources {
+
+		private final Deque<Resource> resources = new ConcurrentLinkedDeque<>();
+
+		private volatile boolean conflictingController;
+
+		/**
+		 * Create a controller of the app and record it, or record that it already existed should its creation
+		 * fail with a conflict.
+		 */
+		private <T> T controller(Controller controller, String name, Supplier<T> creation) {
+			T created;
+			try {
+				created = creation.get();
+			}
+			catch (KubernetesClientException e) {
+				if (e.getCode() == 409) {
+					conflictingController = true;
+				}
+				throw e;
+			}
+			add(controller.api, controller.resource, name);
+			return created;
+		}
+
+		void add(String api, String resource, String name) {
+			resources.push(new Resource(api, resource, name));
+		}
+
+		/**
+		 * @return whether a controller could not be created because it already existed, i.e. another deploy of
+		 * the app got there first
+		 */
+		boolean hasConflictingController() {
+			return conflictingController;
+		}
+
+		List<Resource> newestFirst() {
+			return new ArrayList<>(resources);
+		}
+
+		static final class Resource {
+
+			final String api;
+
+			final String resource;
+
+			final String name;
+
+			Resource(String api, String resource, String name) {
+				this.api = api;
+				this.resource = resource;
+				this.name = name;
+			}
+		}
+	}
+
+	/**
+	 * The kinds of controller the instances of an app can be deployed with.
+	 */
+	private enum Controller {
+
+		REPLICATION_CONTROLLER(CORE_API, "replicationcontrollers"),
+
+		DEPLOYMENT(APPS_API, "deployments"),
+
+		STATEFUL_SET(APPS_API, "statefulsets");
+
+		private final String api;
+
+		private final String resource;
+
+		Controller(String api, String resource) {
+			this.api = api;
+			this.resource = resource;
+		}
+	}
+
 }
@@ -16,14 +16,23 @@
 
 package org.springframework.cloud.deployer.spi.kubernetes;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import io.fabric8.kubernetes.api.model.ContainerStatus;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
 
 import org.springframework.cloud.deployer.spi.app.AppInstanceStatus;
 import org.springframework.cloud.deployer.spi.app.DeploymentState;
@@ -31,45 +40,267 @@ import org.springframework.cloud.deployer.spi.app.DeploymentState;
 /**
  * Represents the status of a module.
  *
+ * The status is a snapshot of the pod taken when it is created: the id, state and attributes are extracted
+ * from the pod up front and the pod itself is not retained.
+ *
+ * The attributes include the startup latencies of the pod, i.e. the milliseconds from its creation until it was
+ * scheduled, initialized, its container started, its containers were ready and it was ready, as far as the pod
+ * got, e.g. {@code time_to_ready_ms}. They are taken from the last transition of the pod conditions and from
+ * the start of the running container.
+ *
+ * A pending pod that is not going to start is reported as failed rather than deploying: right away if its image
+ * name is invalid, and once the problem has persisted for longer than
+ * {@link KubernetesDeployerProperties#getPendingFailureThreshold()} seconds if its image cannot be pulled, its
+ * container cannot be created or it cannot be scheduled. A container that cannot be started is timed from when it
+ * was first seen waiting for that reason, a pod that cannot be scheduled from when it became unschedulable, so that
+ * the time a pod spent getting scheduled or pulling a large image doesn't count. The cause is reported in the
+ * {@code pending_failure_reason} and {@code pending_failure_message} attributes.
+ *
  * @author Florian Rosenberg
  * @author Thomas Risberg
  */
 public class KubernetesAppInstanceStatus implements AppInstanceStatus {
 
 	private static Log logger = LogFactory.getLog(KubernetesAppInstanceStatus.class);
-	private final Pod pod;
-	private final String moduleId;
-	private KubernetesDeployerProperties properties;
-	private ContainerStatus containerStatus;
+
+	/**
+	 * Reasons a container waits for that it will not get over without the app being changed.
+	 */
+	private static final Set<String> TERMINAL_WAITING_REASONS = new HashSet<>(Arrays.asList(
+			"InvalidImageName", "ErrImageNeverPull"));
+
+	/**
+	 * Reasons a container waits for that the kubelet keeps retrying, but that rarely go away by themselves,
+	 * e.g. a missing image, secret or config map.
+	 */
+	private static final Set<String> PERSISTENT_WAITING_REASONS = new HashSet<>(Arrays.asList(
+			"ErrImagePull", "ImagePullBackOff", "CreateContainerConfigError", "CreateContainerError"));
+
+	private final String id;
+	private final String uid;
+	private final DeploymentState state;
+	private final Map<String, String> attributes;
+	private final Map<String, Long> startupLatencies;
+	private final String image;
 
 	public KubernetesAppInstanceStatus(String moduleId, Pod pod, KubernetesDeployerProperties properties) {
-		this.moduleId = moduleId;
-		this.pod = pod;
-		this.properties = properties;
+		this(moduleId, pod, properties, null);
+	}
+
+	/**
+	 * @param appAttributes attributes of the app as a whole, e.g. of its autoscaler, to report along with
+	 * those of the pod, or {@code null} if none
+	 */
+	public KubernetesAppInstanceStatus(String moduleId, Pod pod, KubernetesDeployerProperties properties,
+	                                   Map<String, String> appAttributes) {
+		this(moduleId, pod, properties, appAttributes, null);
+	}
+
+	/**
+	 * @param waitingSince when the containers of pending pods were first seen waiting for a reason that fails the
+	 * pod once it persists, updated with the containers of this pod, or {@code null} to time the containers from
+	 * when the pod was initialized
+	 */
+	KubernetesAppInstanceStatus(String moduleId, Pod pod, KubernetesDeployerProperties properties,
+	                            Map<String, String> appAttributes, LruCache<String, Instant> waitingSince) {
+		ContainerStatus containerStatus;
 		// we assume one container per pod
 		if (pod != null && pod.getStatus().getContainerStatuses().size() == 1) {
-			this.containerStatus = pod.getStatus().getContainerStatuses().get(0);
+			containerStatus = pod.getStatus().getContainerStatuses().get(0);
 		} else {
-			this.containerStatus = null;
+			containerStatus = null;
+		}
+		this.id = pod == null ? "N/A" : pod.getMetadata().getName();
+		this.uid = pod == null ? null : pod.getMetadata().getUid();
+		PendingFailure pendingFailure = pendingFailure(pod, properties, waitingSince, Instant.now());
+		if (pendingFailure != null) {
+			this.state = DeploymentState.failed;
+		}
+		else {
+			this.state = pod != null && containerStatus != null ?
+					mapState(pod, containerStatus, properties) : DeploymentState.unknown;
+		}
+		this.image = containerStatus != null ? containerStatus.getImage() : null;
+		this.startupLatencies = Collections.unmodifiableMap(startupLatencies(pod, containerStatus));
+		Map<String, String> attributes = buildAttributes(pod, containerStatus, appAttributes);
+		for (Map.Entry<String, Long> latency : startupLatencies.entrySet()) {
+			attributes.put("time_to_" + latency.getKey() + "_ms", String.valueOf(latency.getValue()));
+		}
+		if (pendingFailure != null) {
+			attributes.put("pending_failure_reason", pendingFailure.reason);
+			if (pendingFailure.message != null) {
+				attributes.put("pending_failure_message", pendingFailure.message);
+			}
 		}
+		this.attributes = Collections.unmodifiableMap(attributes);
 	}
 
 	@Override
 	public String getId() {
-		return pod == null ? "N/A" : pod.getMetadata().getName();
+		return id;
 	}
 
 	@Override
 	public DeploymentState getState() {
-		return pod != null && containerStatus != null ? mapState() : DeploymentState.unknown;
+		return state;
+	}
+
+	/**
+	 * @return the startup latencies of the pod in milliseconds, keyed by the step the pod got through, e.g.
+	 * {@code scheduled} or {@code ready}, in the order of the steps
+	 */
+	Map<String, Long> getStartupLatencies() {
+		return startupLatencies;
+	}
+
+	/**
+	 * @return the uid of the pod, which tells a pod apart from an earlier one of the same name, or {@code null}
+	 * if not known
+	 */
+	String getUid() {
+		return uid;
+	}
+
+	/**
+	 * @return the image of the container of the pod, or {@code null} if not known
+	 */
+	String getImage() {
+		return image;
+	}
+
+	private static Map<String, Long> startupLatencies(Pod pod, ContainerStatus containerStatus) {
+		Map<String, Long> latencies = new LinkedHashMap<>();
+		Instant created = pod != null ? parseTimestamp(pod.getMetadata().getCreationTimestamp()) : null;
+		if (created == null) {
+			return latencies;
+		}
+		Map<String, Instant> conditions = new HashMap<>();
+		if (pod.getStatus().getConditions() != null) {
+			for (PodCondition condition : pod.getStatus().getConditions()) {
+				if ("True".equals(condition.getStatus())) {
+					conditions.put(condition.getType(), parseTimestamp(condition.getLastTransitionTime()));
+				}
+			}
+		}
+		Instant containerStarted = containerStatus != null && containerStatus.getState() != null
+				&& containerStatus.getState().getRunning() != null ?
+				parseTimestamp(containerStatus.getState().getRunning().getStartedAt()) : null;
+		putLatency(latencies, "scheduled", created, conditions.get("PodScheduled"));
+		putLatency(latencies, "initialized", created, conditions.get("Initialized"));
+		putLatency(latencies, "container_started", created, containerStarted);
+		putLatency(latencies, "containers_ready", created, conditions.get("ContainersReady"));
+		putLatency(latencies, "ready", created, conditions.get("Ready"));
+		return latencies;
+	}
+
+	private static void putLatency(Map<String, Long> latencies, String step, Instant created, Instant reached) {
+		if (reached != null) {
+			latencies.put(step, Math.max(0, reached.toEpochMilli() - created.toEpochMilli()));
+		}
+	}
+
+	private static Instant parseTimestamp(String timestamp) {
+		if (timestamp == null) {
+			return null;
+		}
+		try {
+			return Instant.parse(timestamp);
+		}
+		catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return why a pending pod is not going to start, or {@code null} if the pod is not pending or may still start
+	 */
+	private static PendingFailure pendingFailure(Pod pod, KubernetesDeployerProperties properties,
+	                                             LruCache<String, Instant> waitingSince, Instant now) {
+		int threshold = properties.getPendingFailureThreshold();
+		if (pod == null || threshold < 0 || !"Pending".equals(pod.getStatus().getPhase())) {
+			return null;
+		}
+		if (pod.getStatus().getContainerStatuses() != null) {
+			for (ContainerStatus containerStatus : pod.getStatus().getContainerStatuses()) {
+				String reason = containerStatus.getState() != null && containerStatus.getState().getWaiting() != null ?
+						containerStatus.getState().getWaiting().getReason() : null;
+				Instant since = persistentWaitingSince(pod, containerStatus,
+						PERSISTENT_WAITING_REASONS.contains(reason), waitingSince, now);
+				if (TERMINAL_WAITING_REASONS.contains(reason) || isPast(since, threshold, now)) {
+					return new PendingFailure(reason, containerStatus.getState().getWaiting().getMessage());
+				}
+			}
+		}
+		if (pod.getStatus().getConditions() != null) {
+			for (PodCondition condition : pod.getStatus().getConditions()) {
+				// the condition is False since the scheduler first gave up on the pod
+				if ("PodScheduled".equals(condition.getType()) && "False".equals(condition.getStatus()) &&
+						"Unschedulable".equals(condition.getReason()) &&
+						isPast(parseTimestamp(condition.getLastTransitionTime()), threshold, now)) {
+					return new PendingFailure(condition.getReason(), condition.getMessage());
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The kubelet alternates between some of the persistent reasons, e.g. between {@code ErrImagePull} and
+	 * {@code ImagePullBackOff}, so a container is timed from when it started waiting for any of them.
+	 *
+	 * @return since when the container has been waiting for one of the persistent reasons, or {@code null} if it
+	 * is not waiting for one
+	 */
+	private static Instant persistentWaitingSince(Pod pod, ContainerStatus containerStatus, boolean waiting,
+	                                              LruCache<String, Instant> waitingSince, Instant now) {
+		if (waitingSince == null) {
+			return waiting ? initialized(pod) : null;
+		}
+		String podKey = pod.getMetadata().getUid() != null ? pod.getMetadata().getUid() : pod.getMetadata().getName();
+		String key = podKey + "/" + containerStatus.getName();
+		if (!waiting) {
+			waitingSince.remove(key);
+			return null;
+		}
+		Instant since = waitingSince.putIfAbsent(key, now);
+		return since != null ? since : now;
+	}
+
+	/**
+	 * @return when the pod was initialized, i.e. its containers could be started, falling back to when it was
+	 * scheduled or created
+	 */
+	private static Instant initialized(Pod pod) {
+		Map<String, Instant> conditions = new HashMap<>();
+		if (pod.getStatus().getConditions() != null) {
+			for (PodCondition condition : pod.getStatus().getConditions()) {
+				if ("True".equals(condition.getStatus())) {
+					conditions.put(condition.getType(), parseTimestamp(condition.getLastTransitionTime()));
+				}
+			}
+		}
+		if (conditions.get("Initialized") != null) {
+			return conditions.get("Initialized");
+		}
+		if (conditions.get("PodScheduled") != null) {
+			return conditions.get("PodScheduled");
+		}
+		return parseTimestamp(pod.getMetadata().getCreationTimestamp());
+	}
+
+	private static boolean isPast(Instant since, int thresholdSeconds, Instant now) {
+		return since != null && !Duration.between(since, now).minusSeconds(thresholdSeconds).isNegative();
 	}
 
 	/**
 	 * Maps Kubernetes phases/states onto Spring Cloud Deployer states
 	 */
-	private DeploymentState mapState() {
-		logger.debug(String.format("%s - Phase [ %s ]", pod.getMetadata().getName(), pod.getStatus().getPhase()));
-		logger.debug(String.format("%s - ContainerStatus [ %s ]", pod.getMetadata().getName(), containerStatus));
+	private static DeploymentState mapState(Pod pod, ContainerStatus containerStatus,
+	                                        KubernetesDeployerProperties properties) {
+		if (logger.isDebugEnabled()) {
+			logger.debug(String.format("%s - Phase [ %s ]", pod.getMetadata().getName(), pod.getStatus().getPhase()));
+			logger.debug(String.format("%s - ContainerStatus [ %s ]", pod.getMetadata().getName(), containerStatus));
+		}
 		switch (pod.getStatus().getPhase()) {
 			
 			case "Pending":
@@ -137,8 +368,17 @@ public class KubernetesAppInstanceStatus implements AppInstanceStatus {
 		}
 	}
 
+	/**
+	 * @return the attributes of the snapshot, computed once when the status was created and shared by all
+	 * callers, so they are unmodifiable
+	 */
 	@Override
 	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+	private static Map<String, String> buildAttributes(Pod pod, ContainerStatus containerStatus,
+	                                                   Map<String, String> appAttributes) {
 		Map<String, String> result = new HashMap<>();
 
 		if (pod != null) {
@@ -158,6 +398,21 @@ public class KubernetesAppInstanceStatus implements AppInstanceStatus {
 				result.put("container_termination_reason", containerStatus.getState().getTerminated().getReason());
 			}
 		}
+		if (appAttributes != null) {
+			result.putAll(appAttributes);
+		}
 		return result;
 	}
+
+	private static class PendingFailure {
+
+		private final String reason;
+
+		private final String message;
+
+		PendingFailure(String reason, String message) {
+			this.reason = reason;
+			this.message = message;
+		}
+	}
 }
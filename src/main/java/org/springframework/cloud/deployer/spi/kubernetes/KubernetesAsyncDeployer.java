@@ -0,0 +1,299 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.springframework.cloud.deployer.spi.kubernetes.AbstractKubernetesDeployer.SPRING_APP_KEY;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.cloud.deployer.spi.app.AppDeployer;
+import org.springframework.cloud.deployer.spi.app.AppStatus;
+import org.springframework.cloud.deployer.spi.app.DeploymentState;
+import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
+import org.springframework.cloud.deployer.spi.task.LaunchState;
+import org.springframework.cloud.deployer.spi.task.TaskStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+
+/**
+ * Asynchronous facade over a {@link KubernetesAppDeployer} and a {@link KubernetesTaskLauncher}.
+ * Requests are issued on a dedicated executor and the returned futures complete once the pods of
+ * the app or task reach the requested state, as observed through a watch on the pods rather than
+ * by polling their status.
+ *
+ * The futures never time out by themselves; cancelling a future closes its watch.
+ *
+ * The facade is not auto-configured. It is meant to be created around the auto-configured deployer and
+ * launcher, and closed when no longer needed to shut down its executor:
+ *
+ * <pre>
+ * KubernetesAsyncDeployer asyncDeployer = new KubernetesAsyncDeployer(properties, kubernetesClient,
+ *         (KubernetesAppDeployer) appDeployer, (KubernetesTaskLauncher) taskLauncher);
+ * asyncDeployer.deploy(request).thenAccept(status -&gt; ...);
+ * </pre>
+ */
+public class KubernetesAsyncDeployer implements Closeable {
+
+	private static Log logger = LogFactory.getLog(KubernetesAsyncDeployer.class);
+
+	private final KubernetesAppDeployer appDeployer;
+
+	private final KubernetesTaskLauncher taskLauncher;
+
+	private final KubernetesClient client;
+
+	private final ExecutorService executor;
+
+	public KubernetesAsyncDeployer(KubernetesDeployerProperties properties, KubernetesClient client,
+	                               KubernetesAppDeployer appDeployer, KubernetesTaskLauncher taskLauncher) {
+		this.client = client;
+		this.appDeployer = appDeployer;
+		this.taskLauncher = taskLauncher;
+		this.executor = createExecutor(properties.getAsyncDeployerThreads());
+	}
+
+	/**
+	 * Deploy an app and wait for it to be {@link DeploymentState#deployed}.
+	 *
+	 * @param request the app deployment request
+	 * @return a future completing with the status of the app once deployed or failed
+	 */
+	public CompletableFuture<AppStatus> deploy(AppDeploymentRequest request) {
+		return deploy(request, DeploymentState.deployed);
+	}
+
+	/**
+	 * Deploy an app and wait for it to reach the given state. Waiting for {@link DeploymentState#deployed}
+	 * also waits for as many instances to be deployed as the request asks for with
+	 * {@value AppDeployer#COUNT_PROPERTY_KEY}, as the app is already reported deployed once the instances
+	 * that have been created so far are.
+	 *
+	 * @param request the app deployment request
+	 * @param targetState the state to wait for
+	 * @return a future completing with the status of the app once it is in the target state or failed
+	 */
+	public CompletableFuture<AppStatus> deploy(AppDeploymentRequest request, DeploymentState targetState) {
+		String countProperty = request.getDeploymentProperties().get(AppDeployer.COUNT_PROPERTY_KEY);
+		int count = (countProperty != null) ? Integer.parseInt(countProperty) : 1;
+		return CompletableFuture.supplyAsync(() -> appDeployer.deploy(request), executor)
+				.thenCompose(appId -> awaitPods(appId, pods -> appDeployer.buildAppStatus(appId, pods),
+						status -> status.getState() == DeploymentState.failed || (status.getState() == targetState
+								&& (targetState != DeploymentState.deployed || deployedInstances(status) >= count))));
+	}
+
+	/**
+	 * Undeploy an app and wait for all of its pods to be gone.
+	 *
+	 * @param appId the id of the app
+	 * @return a future completing with the (empty) status of the app once its pods are deleted
+	 */
+	public CompletableFuture<AppStatus> undeploy(String appId) {
+		return CompletableFuture.supplyAsync(() -> appDeployer.undeployAsync(appId), executor)
+				.thenCompose(teardown -> teardown)
+				.thenCompose(ignore -> awaitPods(appId, pods -> appDeployer.buildAppStatus(appId, pods),
+						status -> status.getInstances().isEmpty()));
+	}
+
+	/**
+	 * Launch a task and wait for it to have started, i.e. to be running, complete or failed.
+	 *
+	 * @param request the task launch request
+	 * @return a future completing with the status of the task once it has left the launching state
+	 */
+	public CompletableFuture<TaskStatus> launch(AppDeploymentRequest request) {
+		return launch(request, LaunchState.running);
+	}
+
+	/**
+	 * Launch a task and wait for it to reach the given state.
+	 *
+	 * @param request the task launch request
+	 * @param targetState the state to wait for
+	 * @return a future completing with the status of the task once it is in the target state or has terminated
+	 */
+	public CompletableFuture<TaskStatus> launch(AppDeploymentRequest request, LaunchState targetState) {
+		return CompletableFuture.supplyAsync(() -> taskLauncher.launch(request), executor)
+				.thenCompose(id -> awaitPods(id,
+						pods -> taskLauncher.buildTaskStatus(id, pods.isEmpty() ? null : pods.get(0)),
+						status -> status.getState() == targetState || isTerminal(status.getState())));
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	private <T> CompletableFuture<T> awaitPods(String appId, Function<List<Pod>, T> statusFunction,
+	                                          Predicate<T> completion) {
+		PodStateWatch<T> podStateWatch = new PodStateWatch<>(appId, statusFunction, completion);
+		podStateWatch.start();
+		return podStateWatch.future;
+	}
+
+	/**
+	 * @return the pods of an app
+	 */
+	PodList listPods(String appId) {
+		return client.pods().withLabel(SPRING_APP_KEY, appId).list();
+	}
+
+	/**
+	 * Watch the pods of an app from the given resource version.
+	 */
+	Watch watchPods(String appId, String resourceVersion, Watcher<Pod> watcher) {
+		return client.pods().withLabel(SPRING_APP_KEY, appId).watch(resourceVersion, watcher);
+	}
+
+	private static long deployedInstances(AppStatus status) {
+		return status.getInstances().values().stream()
+				.filter(instance -> instance.getState() == DeploymentState.deployed)
+				.count();
+	}
+
+	private static boolean isTerminal(LaunchState state) {
+		return state == LaunchState.complete || state == LaunchState.failed || state == LaunchState.cancelled
+				|| state == LaunchState.error;
+	}
+
+	/**
+	 * Use a virtual thread per task when the runtime supports it, a bounded pool of platform threads otherwise.
+	 */
+	private static ExecutorService createExecutor(int threads) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("kubernetes-async-deployer-"));
+		}
+	}
+
+	/**
+	 * Tracks the pods of one app through a list followed by a watch from the list's resource version,
+	 * completing its future as soon as the status built from the pods satisfies the completion predicate.
+	 * If the watch is closed by the server before that happens, the pods are listed and watched again.
+	 */
+	private class PodStateWatch<T> implements Watcher<Pod> {
+
+		private final String appId;
+
+		private final Function<List<Pod>, T> statusFunction;
+
+		private final Predicate<T> completion;
+
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private final Map<String, Pod> pods = new LinkedHashMap<>();
+
+		private Watch watch;
+
+		PodStateWatch(String appId, Function<List<Pod>, T> statusFunction, Predicate<T> completion) {
+			this.appId = appId;
+			this.statusFunction = statusFunction;
+			this.completion = completion;
+			this.future.whenComplete((status, e) -> closeWatch());
+		}
+
+		synchronized void start() {
+			if (future.isDone()) {
+				return;
+			}
+			try {
+				PodList list = listPods(appId);
+				pods.clear();
+				if (list.getItems() != null) {
+					for (Pod pod : list.getItems()) {
+						pods.put(pod.getMetadata().getName(), pod);
+					}
+				}
+				if (evaluate()) {
+					return;
+				}
+				String resourceVersion = list.getMetadata() != null ? list.getMetadata().getResourceVersion() : null;
+				watch = watchPods(appId, resourceVersion, this);
+			}
+			catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public synchronized void eventReceived(Action action, Pod pod) {
+			switch (action) {
+				case ADDED:
+				case MODIFIED:
+					pods.put(pod.getMetadata().getName(), pod);
+					break;
+				case DELETED:
+					pods.remove(pod.getMetadata().getName());
+					break;
+				default:
+					return;
+			}
+			evaluate();
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			if (!future.isDone() && cause != null) {
+				logger.debug(String.format("Watch on pods of %s closed, watching again", appId), cause);
+				try {
+					executor.execute(this::start);
+				}
+				catch (RejectedExecutionException e) {
+					future.completeExceptionally(cause);
+				}
+			}
+		}
+
+		private boolean evaluate() {
+			T status = statusFunction.apply(new ArrayList<>(pods.values()));
+			if (completion.test(status)) {
+				future.complete(status);
+				return true;
+			}
+			return false;
+		}
+
+		private synchronized void closeWatch() {
+			if (watch != null) {
+				watch.close();
+				watch = null;
+			}
+		}
+	}
+}
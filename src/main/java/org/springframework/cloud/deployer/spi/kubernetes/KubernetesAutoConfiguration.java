@@ -16,11 +16,28 @@
 
 package org.springframework.cloud.deployer.spi.kubernetes;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.HttpClientUtils;
+import io.micrometer.core.instrument.MeterRegistry;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.AutoConfigureOrder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.deployer.spi.app.AppDeployer;
 import org.springframework.cloud.deployer.spi.task.TaskLauncher;
@@ -44,19 +61,37 @@ public class KubernetesAutoConfiguration {
 
 	@Bean
 	public AppDeployer appDeployer(KubernetesClient kubernetesClient,
-	                               ContainerFactory containerFactory) {
-		return new KubernetesAppDeployer(properties, kubernetesClient, containerFactory);
+	                               ContainerFactory containerFactory,
+	                               ObjectProvider<KubernetesPodCache> podCache,
+	                               ObjectProvider<KubernetesDeployerMetrics> metrics) {
+		KubernetesAppDeployer appDeployer =
+				new KubernetesAppDeployer(properties, kubernetesClient, containerFactory);
+		appDeployer.setPodCache(podCache.getIfAvailable());
+		appDeployer.setMetrics(metrics.getIfAvailable());
+		return appDeployer;
 	}
 
 	@Bean
 	public TaskLauncher taskDeployer(KubernetesClient kubernetesClient,
-	                                 ContainerFactory containerFactory) {
-		return new KubernetesTaskLauncher(properties, kubernetesClient, containerFactory);
+	                                 ContainerFactory containerFactory,
+	                                 ObjectProvider<KubernetesDeployerMetrics> metrics) {
+		KubernetesTaskLauncher taskLauncher = new KubernetesTaskLauncher(properties, kubernetesClient, containerFactory);
+		taskLauncher.setMetrics(metrics.getIfAvailable());
+		return taskLauncher;
 	}
 
 	@Bean
-	public KubernetesClient kubernetesClient() {
-		return new DefaultKubernetesClient().inNamespace(properties.getNamespace());
+	public KubernetesClient kubernetesClient(ObjectProvider<KubernetesDeployerMetrics> metrics) {
+		Config config = new ConfigBuilder().build();
+		OkHttpClient httpClient = configureHttpClient(HttpClientUtils.createHttpClient(config), properties.getHttp(),
+				metrics.getIfAvailable());
+		return new DefaultKubernetesClient(httpClient, config).inNamespace(properties.getNamespace());
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@ConditionalOnProperty(prefix = "spring.cloud.deployer.kubernetes", name = "pod-cache-enabled")
+	public KubernetesPodCache podCache(KubernetesClient kubernetesClient) {
+		return new KubernetesPodCache(kubernetesClient, properties);
 	}
 
 	@Bean
@@ -64,4 +99,62 @@ public class KubernetesAutoConfiguration {
 		return new DefaultContainerFactory(properties);
 	}
 
+	/**
+	 * Apply the transport settings to the HTTP client the Kubernetes client would use by default, keeping
+	 * its authentication, TLS and interceptors, and add the retry and rate limiting interceptors.
+	 */
+	static OkHttpClient configureHttpClient(OkHttpClient httpClient, KubernetesDeployerProperties.Http http) {
+		return configureHttpClient(httpClient, http, null);
+	}
+
+	/**
+	 * Also record every request sent to the API server, including each retry, with the given metrics if any.
+	 */
+	static OkHttpClient configureHttpClient(OkHttpClient httpClient, KubernetesDeployerProperties.Http http,
+	                                        KubernetesDeployerMetrics metrics) {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(http.getMaxRequests());
+		dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+		OkHttpClient.Builder builder = httpClient.newBuilder()
+				.dispatcher(dispatcher)
+				.connectionPool(new ConnectionPool(http.getMaxIdleConnections(), http.getKeepAliveDuration(),
+						TimeUnit.SECONDS))
+				.protocols(http.isHttp2() ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+						: Collections.singletonList(Protocol.HTTP_1_1));
+		if (http.getConnectTimeout() != null) {
+			builder.connectTimeout(http.getConnectTimeout(), TimeUnit.MILLISECONDS);
+		}
+		if (http.getReadTimeout() != null) {
+			builder.readTimeout(http.getReadTimeout(), TimeUnit.MILLISECONDS);
+		}
+		// retry outside of the rate limiter, so that each attempt takes a token
+		if (http.getMaxRetries() > 0) {
+			builder.addInterceptor(new RetryInterceptor(http.getMaxRetries(), http.getRetryBackoff(),
+					http.getMaxRetryBackoff()));
+		}
+		if (http.getQps() > 0) {
+			builder.addInterceptor(new RateLimitingInterceptor(http.getQps(), http.getBurst(), http.getMaxQueueWait()));
+		}
+		if (metrics != null) {
+			builder.addInterceptor(new MetricsInterceptor(metrics));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Records the operations of the deployer and task launcher with Micrometer, if it is on the classpath and
+	 * a {@link MeterRegistry} is available.
+	 */
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	protected static class MetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public KubernetesDeployerMetrics kubernetesDeployerMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+			MeterRegistry registry = meterRegistry.getIfAvailable();
+			return registry != null ? new MicrometerKubernetesDeployerMetrics(registry) : KubernetesDeployerMetrics.NONE;
+		}
+	}
+
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records metrics of the operations of the deployer and task launcher and of the API requests they issue.
+ *
+ * @see MicrometerKubernetesDeployerMetrics
+ */
+public interface KubernetesDeployerMetrics {
+
+	/**
+	 * Metrics that record nothing.
+	 */
+	KubernetesDeployerMetrics NONE = new KubernetesDeployerMetrics() {
+
+		@Override
+		public <T> T time(String operation, Supplier<T> call) {
+			return call.get();
+		}
+
+		@Override
+		public void apiRequest(String method, String status, long nanos) {
+		}
+
+		@Override
+		public void podListSize(int size) {
+		}
+
+		@Override
+		public void podStarted(String appId, String pod, String podUid, String image,
+		                       Map<String, Long> startupLatencies) {
+		}
+	};
+
+	/**
+	 * Time an operation, e.g. {@code deploy}, recording whether it failed. API requests issued by the calling
+	 * thread while the operation runs are attributed to it, or to the outermost operation if operations nest.
+	 *
+	 * @param operation the name of the operation
+	 * @param call the operation
+	 * @return the result of the operation
+	 */
+	<T> T time(String operation, Supplier<T> call);
+
+	/**
+	 * Time an operation without a result.
+	 *
+	 * @see #time(String, Supplier)
+	 */
+	default void time(String operation, Runnable call) {
+		time(operation, () -> {
+			call.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Record an API request.
+	 *
+	 * @param method the HTTP method of the request
+	 * @param status the HTTP status of the response, or the name of the exception if there was none
+	 * @param nanos the duration of the request
+	 */
+	void apiRequest(String method, String status, long nanos);
+
+	/**
+	 * Record the number of pods a status operation read.
+	 */
+	void podListSize(int size);
+
+	/**
+	 * Record the startup latencies of a pod that became ready. This is called whenever the status of a ready pod
+	 * is built, so implementations need to record each pod only once. Pods of stateful sets and indexed apps
+	 * keep their names when they are recreated, e.g. when the app is redeployed, so pods are told apart by their
+	 * uid rather than their name.
+	 *
+	 * @param appId the id of the app
+	 * @param pod the name of the pod
+	 * @param podUid the uid of the pod, or {@code null} if not known
+	 * @param image the image of the container of the pod, or {@code null} if not known
+	 * @param startupLatencies the milliseconds from the creation of the pod to each startup step it got through,
+	 * keyed by the step, e.g. {@code scheduled} or {@code ready}
+	 */
+	void podStarted(String appId, String pod, String podUid, String image, Map<String, Long> startupLatencies);
+}
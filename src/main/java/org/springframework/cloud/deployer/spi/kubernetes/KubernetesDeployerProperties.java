@@ -65,6 +65,213 @@ public class KubernetesDeployerProperties {
 		}
 	}
 
+	/**
+	 * Encapsulates the rolling update settings of Kubernetes Deployments. Both values are either
+	 * an absolute number of pods or a percentage of the desired number of pods, e.g. {@code 25%}.
+	 */
+	public static class RollingUpdate {
+
+		private String maxSurge = "25%";
+
+		private String maxUnavailable = "0";
+
+		public String getMaxSurge() {
+			return maxSurge;
+		}
+
+		public void setMaxSurge(String maxSurge) {
+			this.maxSurge = maxSurge;
+		}
+
+		public String getMaxUnavailable() {
+			return maxUnavailable;
+		}
+
+		public void setMaxUnavailable(String maxUnavailable) {
+			this.maxUnavailable = maxUnavailable;
+		}
+	}
+
+	/**
+	 * Encapsulates the settings of the HTTP transport of the auto-configured Kubernetes client. As all requests
+	 * go to the same API server, the per host limit is the one that bounds the number of concurrent requests.
+	 * The rate of the requests is limited with a token bucket, and requests the API server throttles or fails
+	 * to serve are retried with a jittered backoff.
+	 */
+	public static class Http {
+
+		private int maxRequests = 64;
+
+		private int maxRequestsPerHost = 32;
+
+		private int maxIdleConnections = 16;
+
+		private long keepAliveDuration = 300;
+
+		private Integer connectTimeout;
+
+		private Integer readTimeout;
+
+		private boolean http2 = true;
+
+		private double qps = 50;
+
+		private int burst = 100;
+
+		private long maxQueueWait;
+
+		private int maxRetries = 3;
+
+		private long retryBackoff = 200;
+
+		private long maxRetryBackoff = 10000;
+
+		/**
+		 * @return the maximum number of requests executed concurrently
+		 */
+		public int getMaxRequests() {
+			return maxRequests;
+		}
+
+		public void setMaxRequests(int maxRequests) {
+			this.maxRequests = maxRequests;
+		}
+
+		/**
+		 * @return the maximum number of requests executed concurrently against the API server
+		 */
+		public int getMaxRequestsPerHost() {
+			return maxRequestsPerHost;
+		}
+
+		public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+			this.maxRequestsPerHost = maxRequestsPerHost;
+		}
+
+		/**
+		 * @return the maximum number of idle connections kept in the connection pool
+		 */
+		public int getMaxIdleConnections() {
+			return maxIdleConnections;
+		}
+
+		public void setMaxIdleConnections(int maxIdleConnections) {
+			this.maxIdleConnections = maxIdleConnections;
+		}
+
+		/**
+		 * @return the number of seconds an idle connection is kept in the connection pool
+		 */
+		public long getKeepAliveDuration() {
+			return keepAliveDuration;
+		}
+
+		public void setKeepAliveDuration(long keepAliveDuration) {
+			this.keepAliveDuration = keepAliveDuration;
+		}
+
+		/**
+		 * @return the connect timeout in milliseconds, or {@code null} for the default of the Kubernetes client
+		 */
+		public Integer getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(Integer connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		/**
+		 * @return the read timeout in milliseconds, or {@code null} for the default of the Kubernetes client
+		 */
+		public Integer getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(Integer readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+
+		/**
+		 * @return whether HTTP/2 is preferred over HTTP/1.1 when the API server supports it
+		 */
+		public boolean isHttp2() {
+			return http2;
+		}
+
+		public void setHttp2(boolean http2) {
+			this.http2 = http2;
+		}
+
+		/**
+		 * @return the sustained number of requests per second the client sends, or {@code 0} for no limit.
+		 * Requests over the limit wait for their turn, see {@link #getMaxQueueWait()}.
+		 */
+		public double getQps() {
+			return qps;
+		}
+
+		public void setQps(double qps) {
+			this.qps = qps;
+		}
+
+		/**
+		 * @return the number of requests the client may send at once on top of the sustained rate
+		 */
+		public int getBurst() {
+			return burst;
+		}
+
+		public void setBurst(int burst) {
+			this.burst = burst;
+		}
+
+		/**
+		 * @return the maximum number of milliseconds a request over the rate limit waits for its turn before it
+		 * fails, or {@code 0} to wait as long as it takes
+		 */
+		public long getMaxQueueWait() {
+			return maxQueueWait;
+		}
+
+		public void setMaxQueueWait(long maxQueueWait) {
+			this.maxQueueWait = maxQueueWait;
+		}
+
+		/**
+		 * @return the maximum number of times a throttled or failed request is retried
+		 */
+		public int getMaxRetries() {
+			return maxRetries;
+		}
+
+		public void setMaxRetries(int maxRetries) {
+			this.maxRetries = maxRetries;
+		}
+
+		/**
+		 * @return the base of the exponential backoff between retries, in milliseconds
+		 */
+		public long getRetryBackoff() {
+			return retryBackoff;
+		}
+
+		public void setRetryBackoff(long retryBackoff) {
+			this.retryBackoff = retryBackoff;
+		}
+
+		/**
+		 * @return the maximum delay before a retry, including one asked for with {@code Retry-After}, in milliseconds
+		 */
+		public long getMaxRetryBackoff() {
+			return maxRetryBackoff;
+		}
+
+		public void setMaxRetryBackoff(long maxRetryBackoff) {
+			this.maxRetryBackoff = maxRetryBackoff;
+		}
+	}
+
 	private static String KUBERNETES_NAMESPACE =
 			System.getenv("KUBERNETES_NAMESPACE") != null ? System.getenv("KUBERNETES_NAMESPACE") : "default";
 
@@ -186,6 +393,14 @@ public class KubernetesDeployerProperties {
 	 */
 	private int maxCrashLoopBackOffRestarts = 4;
 
+	/**
+	 * Seconds a pending pod may keep failing to pull its image, to create its container or to get scheduled
+	 * before the app is considered failed, counted from when that failure was first seen rather than from the
+	 * creation of the pod. Pods with an invalid image name fail right away. A negative value never fails
+	 * pending pods.
+	 */
+	private int pendingFailureThreshold = 120;
+
 	/**
 	 * The image pull policy to use for Pod deployments in Kubernetes.
 	 */
@@ -214,6 +429,89 @@ public class KubernetesDeployerProperties {
 	 */
 	private boolean hostNetwork = false;
 
+	/**
+	 * Serve app status from a local pod cache that is kept up to date by a single watch on all
+	 * app pods in the namespace, instead of listing the pods of an app on every status call.
+	 */
+	private boolean podCacheEnabled = false;
+
+	/**
+	 * Period in seconds after which the pod cache is re-listed from scratch, even if its watch is still open.
+	 */
+	private int podCacheResyncPeriod = 300;
+
+	/**
+	 * Maximum number of instances of an indexed app whose service and replication controller are created
+	 * concurrently. A value of 1 creates the instances one after the other.
+	 */
+	private int deployParallelism = 1;
+
+	/**
+	 * Maximum number of threads used to delete the instances of apps concurrently. Waiting for LoadBalancer
+	 * services to complete before deleting them does not occupy one of these threads.
+	 */
+	private int undeployParallelism = 4;
+
+	/**
+	 * Number of threads used by the asynchronous deployer to issue deploy, undeploy and launch requests.
+	 * Ignored on runtimes that support virtual threads, where each request gets its own virtual thread.
+	 */
+	private int asyncDeployerThreads = 8;
+
+	/**
+	 * Deploy indexed apps as a single StatefulSet with a headless service, instead of a replication controller
+	 * and a service per instance. The instance index is taken from the ordinal of the pod, which requires
+	 * Kubernetes 1.28 or later. Such apps can't be exposed with a LoadBalancer or NodePort service.
+	 */
+	private boolean statefulSetForIndexedApps = false;
+
+	/**
+	 * Deploy apps that are not indexed as a Deployment instead of a replication controller, which allows them
+	 * to be updated in place with a rolling update.
+	 */
+	private boolean useDeployments = false;
+
+	/**
+	 * Maximum surge and unavailability of the pods of a Deployment during a rolling update. Defaults to never
+	 * taking a pod down before its replacement is ready.
+	 */
+	private RollingUpdate rollingUpdate = new RollingUpdate();
+
+	/**
+	 * Minimum number of seconds a new pod of a Deployment must be ready for before it is considered available
+	 * and the rolling update moves on.
+	 */
+	private int minReadySeconds = 0;
+
+	/**
+	 * Maximum number of items the deployer asks the API server for per list request, continuing with further
+	 * requests until the list is complete. A value of 0 lists all items with a single request.
+	 */
+	private int listPageSize = 500;
+
+	/**
+	 * Consistency of the reads of the deployer that may be slightly stale: with {@code cached} the status of
+	 * apps and tasks and the existence of apps are read from the watch cache of the API server instead of
+	 * with a quorum read from etcd. The checks that guard deploying, launching, scaling and undeploying are
+	 * always strong reads.
+	 */
+	private ReadConsistency readConsistency = ReadConsistency.strong;
+
+	/**
+	 * Consistency of status reads of apps and tasks, overriding {@code readConsistency} if set.
+	 */
+	private ReadConsistency statusReadConsistency;
+
+	/**
+	 * Consistency of app existence checks, overriding {@code readConsistency} if set.
+	 */
+	private ReadConsistency existsReadConsistency;
+
+	/**
+	 * Settings of the HTTP transport of the auto-configured Kubernetes client.
+	 */
+	private Http http = new Http();
+
 
 	public String getNamespace() {
 		return namespace;
@@ -375,6 +673,18 @@ public class KubernetesDeployerProperties {
 		this.maxCrashLoopBackOffRestarts = maxCrashLoopBackOffRestarts;
 	}
 
+	/**
+	 * @return the seconds a pending pod may keep failing to start before the app is considered failed, or a
+	 * negative value to never fail pending pods
+	 */
+	public int getPendingFailureThreshold() {
+		return pendingFailureThreshold;
+	}
+
+	public void setPendingFailureThreshold(int pendingFailureThreshold) {
+		this.pendingFailureThreshold = pendingFailureThreshold;
+	}
+
 	public ImagePullPolicy getImagePullPolicy() {
 		return imagePullPolicy;
 	}
@@ -422,4 +732,116 @@ public class KubernetesDeployerProperties {
 	public void setHostNetwork(boolean hostNetwork) {
 		this.hostNetwork = hostNetwork;
 	}
+
+	public boolean isPodCacheEnabled() {
+		return podCacheEnabled;
+	}
+
+	public void setPodCacheEnabled(boolean podCacheEnabled) {
+		this.podCacheEnabled = podCacheEnabled;
+	}
+
+	public int getPodCacheResyncPeriod() {
+		return podCacheResyncPeriod;
+	}
+
+	public void setPodCacheResyncPeriod(int podCacheResyncPeriod) {
+		this.podCacheResyncPeriod = podCacheResyncPeriod;
+	}
+
+	public int getDeployParallelism() {
+		return deployParallelism;
+	}
+
+	public void setDeployParallelism(int deployParallelism) {
+		this.deployParallelism = deployParallelism;
+	}
+
+	public int getAsyncDeployerThreads() {
+		return asyncDeployerThreads;
+	}
+
+	public void setAsyncDeployerThreads(int asyncDeployerThreads) {
+		this.asyncDeployerThreads = asyncDeployerThreads;
+	}
+
+	public int getUndeployParallelism() {
+		return undeployParallelism;
+	}
+
+	public void setUndeployParallelism(int undeployParallelism) {
+		this.undeployParallelism = undeployParallelism;
+	}
+
+	public boolean isStatefulSetForIndexedApps() {
+		return statefulSetForIndexedApps;
+	}
+
+	public void setStatefulSetForIndexedApps(boolean statefulSetForIndexedApps) {
+		this.statefulSetForIndexedApps = statefulSetForIndexedApps;
+	}
+
+	public boolean isUseDeployments() {
+		return useDeployments;
+	}
+
+	public void setUseDeployments(boolean useDeployments) {
+		this.useDeployments = useDeployments;
+	}
+
+	public RollingUpdate getRollingUpdate() {
+		return rollingUpdate;
+	}
+
+	public void setRollingUpdate(RollingUpdate rollingUpdate) {
+		this.rollingUpdate = rollingUpdate;
+	}
+
+	public int getMinReadySeconds() {
+		return minReadySeconds;
+	}
+
+	public void setMinReadySeconds(int minReadySeconds) {
+		this.minReadySeconds = minReadySeconds;
+	}
+
+	public int getListPageSize() {
+		return listPageSize;
+	}
+
+	public void setListPageSize(int listPageSize) {
+		this.listPageSize = listPageSize;
+	}
+
+	public ReadConsistency getReadConsistency() {
+		return readConsistency;
+	}
+
+	public void setReadConsistency(ReadConsistency readConsistency) {
+		this.readConsistency = readConsistency;
+	}
+
+	public ReadConsistency getStatusReadConsistency() {
+		return statusReadConsistency != null ? statusReadConsistency : readConsistency;
+	}
+
+	public void setStatusReadConsistency(ReadConsistency statusReadConsistency) {
+		this.statusReadConsistency = statusReadConsistency;
+	}
+
+	public ReadConsistency getExistsReadConsistency() {
+		return existsReadConsistency != null ? existsReadConsistency : readConsistency;
+	}
+
+	public void setExistsReadConsistency(ReadConsistency existsReadConsistency) {
+		this.existsReadConsistency = existsReadConsistency;
+	}
+
+	public Http getHttp() {
+		return http;
+	}
+
+	public void setHttp(Http http) {
+		this.http = http;
+	}
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.springframework.cloud.deployer.spi.kubernetes.AbstractKubernetesDeployer.SPRING_APP_KEY;
+import static org.springframework.cloud.deployer.spi.kubernetes.AbstractKubernetesDeployer.SPRING_MARKER_KEY;
+import static org.springframework.cloud.deployer.spi.kubernetes.AbstractKubernetesDeployer.SPRING_MARKER_VALUE;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+
+/**
+ * A local cache of the pods of all deployed apps in the namespace of the client. The cache lists
+ * the pods labelled {@code role=spring-app} once, indexes them by their {@code spring-app-id} label
+ * and then keeps the index up to date using a single long-lived watch. Whenever the watch is closed
+ * by the server (e.g. because its resource version expired) the cache is re-listed and the watch
+ * re-established.
+ *
+ * While the watch is not open the cache reports itself as not synced and callers are expected to
+ * fall back to reading from the API server.
+ */
+public class KubernetesPodCache implements Closeable {
+
+	private static Log logger = LogFactory.getLog(KubernetesPodCache.class);
+
+	private static final long RETRY_DELAY = 5000L;
+
+	private final KubernetesClient client;
+
+	private final int resyncPeriod;
+
+	private final ConcurrentMap<String, Map<String, Pod>> podsByAppId = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService resyncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "kubernetes-pod-cache");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Watch watch;
+
+	private int generation;
+
+	private boolean started;
+
+	private volatile boolean closed;
+
+	private volatile boolean synced;
+
+	private volatile long lastSyncTime;
+
+	private volatile long disconnectedSince = System.currentTimeMillis();
+
+	public KubernetesPodCache(KubernetesClient client, KubernetesDeployerProperties properties) {
+		this.client = client;
+		this.resyncPeriod = properties.getPodCacheResyncPeriod();
+	}
+
+	/**
+	 * Do the initial list of the app pods, open the watch and schedule the periodic resync.
+	 */
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		resync();
+		if (resyncPeriod > 0) {
+			resyncExecutor.scheduleWithFixedDelay(this::resync, resyncPeriod, resyncPeriod, TimeUnit.SECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		synced = false;
+		closeWatch();
+		resyncExecutor.shutdownNow();
+		podsByAppId.clear();
+	}
+
+	/**
+	 * Whether the cache has been listed and its watch is currently open, i.e. whether it can be used
+	 * to serve status requests.
+	 */
+	public boolean isSynced() {
+		return synced;
+	}
+
+	/**
+	 * @return the time in milliseconds of the last successful list of the app pods, or 0 if never listed
+	 */
+	public long getLastSyncTime() {
+		return lastSyncTime;
+	}
+
+	/**
+	 * @return the number of milliseconds the cache has not been receiving updates for, which is 0
+	 * as long as its watch is open
+	 */
+	public long getStaleness() {
+		return synced ? 0L : System.currentTimeMillis() - disconnectedSince;
+	}
+
+	/**
+	 * @param appId the app id to get the pods for
+	 * @return a snapshot of the cached pods labelled with the given app id
+	 */
+	public List<Pod> getPods(String appId) {
+		Map<String, Pod> pods = podsByAppId.get(appId);
+		if (pods == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<>(pods.values());
+	}
+
+	synchronized void resync() {
+		if (closed) {
+			return;
+		}
+		closeWatch();
+		try {
+			PodList list = listPods();
+			Map<String, Map<String, Pod>> index = new HashMap<>();
+			if (list.getItems() != null) {
+				for (Pod pod : list.getItems()) {
+					String appId = appIdOf(pod);
+					if (appId != null) {
+						index.computeIfAbsent(appId, k -> new ConcurrentHashMap<>()).put(pod.getMetadata().getName(), pod);
+					}
+				}
+			}
+			podsByAppId.keySet().retainAll(index.keySet());
+			podsByAppId.putAll(index);
+			String resourceVersion = list.getMetadata() != null ? list.getMetadata().getResourceVersion() : null;
+			watch = watchPods(resourceVersion, new PodWatcher(generation));
+			lastSyncTime = System.currentTimeMillis();
+			synced = true;
+			logger.debug(String.format("Synced pod cache with %d apps at resource version %s",
+					index.size(), resourceVersion));
+		}
+		catch (RuntimeException e) {
+			logger.warn("Failed to sync pod cache, retrying in " + RETRY_DELAY + "ms", e);
+			disconnected();
+			resyncExecutor.schedule(this::resync, RETRY_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the pods labelled {@code role=spring-app}
+	 */
+	PodList listPods() {
+		return client.pods().withLabel(SPRING_MARKER_KEY, SPRING_MARKER_VALUE).list();
+	}
+
+	/**
+	 * Watch the pods labelled {@code role=spring-app} from the given resource version.
+	 */
+	Watch watchPods(String resourceVersion, Watcher<Pod> watcher) {
+		return client.pods().withLabel(SPRING_MARKER_KEY, SPRING_MARKER_VALUE).watch(resourceVersion, watcher);
+	}
+
+	void apply(Watcher.Action action, Pod pod) {
+		String appId = appIdOf(pod);
+		if (appId == null) {
+			return;
+		}
+		String podName = pod.getMetadata().getName();
+		switch (action) {
+			case ADDED:
+			case MODIFIED:
+				podsByAppId.computeIfAbsent(appId, k -> new ConcurrentHashMap<>()).put(podName, pod);
+				break;
+			case DELETED:
+				podsByAppId.computeIfPresent(appId, (k, pods) -> {
+					pods.remove(podName);
+					return pods.isEmpty() ? null : pods;
+				});
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void closeWatch() {
+		generation++;
+		if (watch != null) {
+			try {
+				watch.close();
+			}
+			catch (RuntimeException e) {
+				logger.debug("Failed to close pod cache watch", e);
+			}
+			watch = null;
+		}
+		disconnected();
+	}
+
+	private void disconnected() {
+		if (synced) {
+			disconnectedSince = System.currentTimeMillis();
+		}
+		synced = false;
+	}
+
+	private static String appIdOf(Pod pod) {
+		if (pod == null || pod.getMetadata() == null || pod.getMetadata().getLabels() == null) {
+			return null;
+		}
+		return pod.getMetadata().getLabels().get(SPRING_APP_KEY);
+	}
+
+	/**
+	 * Applies the events of one watch to the cache. Events of a watch that has since been replaced are ignored,
+	 * so a late event of a closed watch can't resurrect a pod that is no longer part of the current list.
+	 */
+	private class PodWatcher implements Watcher<Pod> {
+
+		private final int watchGeneration;
+
+		PodWatcher(int watchGeneration) {
+			this.watchGeneration = watchGeneration;
+		}
+
+		@Override
+		public void eventReceived(Action action, Pod pod) {
+			synchronized (KubernetesPodCache.this) {
+				if (watchGeneration != generation) {
+					return;
+				}
+				if (action == Action.ERROR) {
+					logger.debug("Pod cache watch reported an error, resyncing");
+					disconnected();
+					resyncExecutor.execute(KubernetesPodCache.this::resync);
+					return;
+				}
+				apply(action, pod);
+			}
+		}
+
+		@Override
+		public void onClose(KubernetesClientException cause) {
+			synchronized (KubernetesPodCache.this) {
+				if (watchGeneration != generation || closed) {
+					return;
+				}
+				logger.debug("Pod cache watch closed, resyncing", cause);
+				disconnected();
+				resyncExecutor.execute(KubernetesPodCache.this::resync);
+			}
+		}
+	}
+}
@@ -31,7 +31,6 @@ import org.springframework.cloud.deployer.spi.task.TaskLauncher;
 import org.springframework.cloud.deployer.spi.task.TaskStatus;
 
 import io.fabric8.kubernetes.api.model.Pod;
-import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.PodSpec;
 import io.fabric8.kubernetes.api.model.PodStatus;
 import io.fabric8.kubernetes.client.KubernetesClient;
@@ -44,6 +43,10 @@ import io.fabric8.kubernetes.client.KubernetesClientException;
  */
 public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implements TaskLauncher {
 
+	private final KubernetesApiOperations apiOperations;
+
+	private final SingleFlight<String, TaskStatus> statusFlight = new SingleFlight<>();
+
 	@Autowired
 	public KubernetesTaskLauncher(KubernetesDeployerProperties properties,
 	                             KubernetesClient client) {
@@ -56,12 +59,18 @@ public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implement
 		this.properties = properties;
 		this.client = client;
 		this.containerFactory = containerFactory;
+		this.apiOperations = new KubernetesApiOperations(client, properties.getListPageSize());
 	}
 
 	@Override
 	public String launch(AppDeploymentRequest request) {
+		return metrics.time("launch", () -> doLaunch(request));
+	}
+
+	private String doLaunch(AppDeploymentRequest request) {
 		String appId = createDeploymentId(request);
-		TaskStatus status = status(appId);
+		// the launch guard reads strongly, whatever the consistency of status reads
+		TaskStatus status = buildTaskStatus(appId, ReadConsistency.strong);
 		if (!status.getState().equals(LaunchState.unknown)) {
 			throw new IllegalStateException("Task " + appId + " already exists with a state of " + status);
 		}
@@ -87,14 +96,16 @@ public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implement
 	@Override
 	public void cleanup(String id) {
 		logger.debug(String.format("Deleting pod for task: %s", id));
-		deletePod(id);
+		metrics.time("cleanup", () -> deletePod(id));
 	}
 
 	@Override
 	public void destroy(String appName) {
-		for (String id : getPodIdsForTaskName(appName)) {
-			cleanup(id);
-		}
+		metrics.time("destroy", () -> {
+			for (String id : getPodIdsForTaskName(appName)) {
+				cleanup(id);
+			}
+		});
 	}
 
 	@Override
@@ -104,12 +115,21 @@ public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implement
 
 	@Override
 	public TaskStatus status(String id) {
-		TaskStatus status = buildTaskStatus(id);
+		// concurrent callers asking for the same task share a single read
+		TaskStatus status = metrics.time("status", () -> statusFlight.execute(id, () -> buildTaskStatus(id)));
 		logger.debug(String.format("Status for task: %s is %s", id, status));
 
 		return status;
 	}
 
+	/**
+	 * @return the number of {@link #status(String)} calls that shared the read of a concurrent call for the
+	 * same task instead of reading from the API server themselves
+	 */
+	public long getCoalescedStatusRequests() {
+		return statusFlight.getCoalesced();
+	}
+
 	protected String createDeploymentId(AppDeploymentRequest request) {
 		String name = request.getDefinition().getName();
 		Hashids hashids = new Hashids(name, 0, "abcdefghijklmnopqrstuvwxyz1234567890");
@@ -138,8 +158,7 @@ public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implement
 	private List<String> getPodIdsForTaskName(String taskName) {
 		List<String> ids = new ArrayList<>();
 		try {
-			PodList pods = client.pods().inNamespace(client.getNamespace()).withLabel("task-name", taskName).list();
-			for (Pod pod : pods.getItems()) {
+			for (Pod pod : apiOperations.listPodStatuses("task-name=" + taskName, ReadConsistency.strong)) {
 				ids.add(pod.getMetadata().getName());
 			}
 		}
@@ -165,7 +184,14 @@ public class KubernetesTaskLauncher extends AbstractKubernetesDeployer implement
 	}
 
 	TaskStatus buildTaskStatus(String id) {
-		Pod pod = client.pods().inNamespace(client.getNamespace()).withName(id).get();
+		return buildTaskStatus(id, properties.getStatusReadConsistency());
+	}
+
+	private TaskStatus buildTaskStatus(String id, ReadConsistency consistency) {
+		return buildTaskStatus(id, apiOperations.getPodStatus(id, consistency));
+	}
+
+	TaskStatus buildTaskStatus(String id, Pod pod) {
 		if (pod == null) {
 			return new TaskStatus(id, LaunchState.unknown, new HashMap<>());
 		}
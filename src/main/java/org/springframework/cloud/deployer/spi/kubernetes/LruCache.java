@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A thread safe cache holding at most a fixed number of entries, evicting the least recently used
+ * entry when full.
+ */
+class LruCache<K, V> {
+
+	private final Map<K, V> entries;
+
+	LruCache(final int maxSize) {
+		this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	synchronized V get(K key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(K key, V value) {
+		entries.put(key, value);
+	}
+
+	/**
+	 * Put a value unless the key already has one.
+	 *
+	 * @return the value the key already had, or {@code null} if the given value was put
+	 */
+	synchronized V putIfAbsent(K key, V value) {
+		V existing = entries.get(key);
+		if (existing == null) {
+			entries.put(key, value);
+		}
+		return existing;
+	}
+
+	/**
+	 * Get the value for a key, computing and caching it if absent. The value is computed without holding
+	 * the lock of the cache, so it may be computed more than once by concurrent callers.
+	 */
+	V computeIfAbsent(K key, Function<K, V> mappingFunction) {
+		V value = get(key);
+		if (value == null) {
+			value = mappingFunction.apply(key);
+			if (value != null) {
+				put(key, value);
+			}
+		}
+		return value;
+	}
+
+	synchronized V remove(K key) {
+		return entries.remove(key);
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+}
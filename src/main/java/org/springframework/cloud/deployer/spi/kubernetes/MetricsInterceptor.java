@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Records every request the HTTP client sends to the API server with {@link KubernetesDeployerMetrics}.
+ */
+class MetricsInterceptor implements Interceptor {
+
+	private final KubernetesDeployerMetrics metrics;
+
+	MetricsInterceptor(KubernetesDeployerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		long start = System.nanoTime();
+		try {
+			Response response = chain.proceed(request);
+			metrics.apiRequest(request.method(), String.valueOf(response.code()), System.nanoTime() - start);
+			return response;
+		}
+		catch (IOException | RuntimeException e) {
+			metrics.apiRequest(request.method(), e.getClass().getSimpleName(), System.nanoTime() - start);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link KubernetesDeployerMetrics} backed by Micrometer. Records
+ * <ul>
+ * <li>{@value #OPERATIONS}: a timer per operation, tagged with the operation and its exception, if any,
+ * publishing a percentile histogram</li>
+ * <li>{@value #API_REQUESTS}: a timer per API request, tagged with the operation it was issued by, its method
+ * and status</li>
+ * <li>{@value #API_REQUESTS_PER_OPERATION}: the number of API requests each operation issued</li>
+ * <li>{@value #POD_LIST_SIZE}: the number of pods each status operation read</li>
+ * <li>{@value #POD_STARTUP}: the time from the creation of each pod to each startup step, tagged with the app,
+ * the image and the step, publishing a percentile histogram</li>
+ * </ul>
+ */
+public class MicrometerKubernetesDeployerMetrics implements KubernetesDeployerMetrics {
+
+	static final String OPERATIONS = "spring.cloud.deployer.kubernetes.operations";
+
+	static final String API_REQUESTS = "spring.cloud.deployer.kubernetes.api.requests";
+
+	static final String API_REQUESTS_PER_OPERATION = "spring.cloud.deployer.kubernetes.api.requests.per.operation";
+
+	static final String POD_LIST_SIZE = "spring.cloud.deployer.kubernetes.pod.list.size";
+
+	static final String POD_STARTUP = "spring.cloud.deployer.kubernetes.pod.startup";
+
+	private static final int RECORDED_PODS = 10000;
+
+	private static final String NO_OPERATION = "none";
+
+	private final MeterRegistry registry;
+
+	private final ThreadLocal<Operation> currentOperation = new ThreadLocal<>();
+
+	/**
+	 * The uids of the pods whose startup has been recorded, as their status is built over and over again.
+	 */
+	private final LruCache<String, Boolean> recordedPods = new LruCache<>(RECORDED_PODS);
+
+	public MicrometerKubernetesDeployerMetrics(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public <T> T time(String operation, Supplier<T> call) {
+		Operation outer = currentOperation.get();
+		Operation current = outer != null ? outer : new Operation(operation);
+		if (outer == null) {
+			currentOperation.set(current);
+		}
+		String exception = "none";
+		long start = System.nanoTime();
+		try {
+			return call.get();
+		}
+		catch (RuntimeException | Error e) {
+			exception = e.getClass().getSimpleName();
+			throw e;
+		}
+		finally {
+			Timer.builder(OPERATIONS)
+					.tag("operation", operation)
+					.tag("exception", exception)
+					.publishPercentileHistogram()
+					.register(registry)
+					.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (outer == null) {
+				currentOperation.remove();
+				DistributionSummary.builder(API_REQUESTS_PER_OPERATION)
+						.tag("operation", operation)
+						.register(registry)
+						.record(current.apiRequests);
+			}
+		}
+	}
+
+	@Override
+	public void apiRequest(String method, String status, long nanos) {
+		Operation operation = currentOperation.get();
+		if (operation != null) {
+			operation.apiRequests++;
+		}
+		Timer.builder(API_REQUESTS)
+				.tag("operation", operation != null ? operation.name : NO_OPERATION)
+				.tag("method", method)
+				.tag("status", status)
+				.register(registry)
+				.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void podListSize(int size) {
+		Operation operation = currentOperation.get();
+		DistributionSummary.builder(POD_LIST_SIZE)
+				.tag("operation", operation != null ? operation.name : NO_OPERATION)
+				.register(registry)
+				.record(size);
+	}
+
+	@Override
+	public void podStarted(String appId, String pod, String podUid, String image,
+	                       Map<String, Long> startupLatencies) {
+		if (recordedPods.putIfAbsent(podUid != null ? podUid : pod, Boolean.TRUE) != null) {
+			return;
+		}
+		for (Map.Entry<String, Long> latency : startupLatencies.entrySet()) {
+			Timer.builder(POD_STARTUP)
+					.tag("app", appId)
+					.tag("image", image != null ? image : "unknown")
+					.tag("step", latency.getKey())
+					.publishPercentileHistogram()
+					.register(registry)
+					.record(latency.getValue(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static class Operation {
+
+		private final String name;
+
+		private int apiRequests;
+
+		Operation(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodCondition;
+import io.fabric8.kubernetes.api.model.PodStatus;
+
+/**
+ * Decodes the pods of a pod list as returned by the API server into pods that only carry what the status
+ * of an app is built from: the name, uid, labels and creation time of each pod and its phase, start time, IPs,
+ * conditions and container statuses. The JSON is read with a streaming parser and everything else, in particular the pod specs,
+ * is skipped without being materialized.
+ */
+class PodStatusDecoder {
+
+	private static final TypeReference<Map<String, String>> LABELS = new TypeReference<Map<String, String>>() {};
+
+	private static final TypeReference<List<ContainerStatus>> CONTAINER_STATUSES =
+			new TypeReference<List<ContainerStatus>>() {};
+
+	private static final TypeReference<List<PodCondition>> CONDITIONS = new TypeReference<List<PodCondition>>() {};
+
+	private final ObjectMapper objectMapper;
+
+	PodStatusDecoder(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * Read a pod, with the parser positioned at the start of its JSON object.
+	 *
+	 * @param parser the parser, which is left at the end of the object
+	 * @return the pod, reduced to its status relevant fields
+	 */
+	Pod readPod(JsonParser parser) throws IOException {
+		Pod pod = new Pod();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("metadata".equals(field) && value == JsonToken.START_OBJECT) {
+				pod.setMetadata(readMetadata(parser));
+			}
+			else if ("status".equals(field) && value == JsonToken.START_OBJECT) {
+				pod.setStatus(readStatus(parser));
+			}
+			else {
+				parser.skipChildren();
+			}
+		}
+		return pod;
+	}
+
+	private ObjectMeta readMetadata(JsonParser parser) throws IOException {
+		ObjectMeta metadata = new ObjectMeta();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "name":
+					metadata.setName(parser.getValueAsString());
+					break;
+				case "namespace":
+					metadata.setNamespace(parser.getValueAsString());
+					break;
+				case "uid":
+					metadata.setUid(parser.getValueAsString());
+					break;
+				case "labels":
+					metadata.setLabels(objectMapper.readValue(parser, LABELS));
+					break;
+				case "creationTimestamp":
+					metadata.setCreationTimestamp(parser.getValueAsString());
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return metadata;
+	}
+
+	private PodStatus readStatus(JsonParser parser) throws IOException {
+		PodStatus status = new PodStatus();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			switch (field) {
+				case "phase":
+					status.setPhase(parser.getValueAsString());
+					break;
+				case "startTime":
+					status.setStartTime(parser.getValueAsString());
+					break;
+				case "podIP":
+					status.setPodIP(parser.getValueAsString());
+					break;
+				case "hostIP":
+					status.setHostIP(parser.getValueAsString());
+					break;
+				case "conditions":
+					List<PodCondition> conditions = objectMapper.readValue(parser, CONDITIONS);
+					if (conditions != null) {
+						status.setConditions(conditions);
+					}
+					break;
+				case "containerStatuses":
+					List<ContainerStatus> containerStatuses = objectMapper.readValue(parser, CONTAINER_STATUSES);
+					if (containerStatuses != null) {
+						status.setContainerStatuses(containerStatuses);
+					}
+					break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return status;
+	}
+}
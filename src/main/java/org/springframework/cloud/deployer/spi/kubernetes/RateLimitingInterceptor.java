@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Limits the rate of the requests of an HTTP client with a token bucket: the bucket holds up to
+ * {@code burst} tokens and is refilled with {@code qps} tokens per second, and every request takes
+ * a token, waiting for the bucket to be refilled if it is empty. Callers that have to wait are
+ * served in the order they arrived. The wait may be capped: a request that would have to wait longer than
+ * {@code maxWait} milliseconds behind the requests already queued then fails right away instead, without
+ * taking a token, so that a sustained overload does not pile up an ever longer queue of waiting callers.
+ */
+class RateLimitingInterceptor implements Interceptor {
+
+	private final double qps;
+
+	private final double burst;
+
+	private final long maxWaitNanos;
+
+	private final LongSupplier nanoTime;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	/**
+	 * @param qps the number of requests per second
+	 * @param burst the number of requests that may be sent at once
+	 * @param maxWait the maximum number of milliseconds a request may wait for a token, or {@code 0} to
+	 * wait as long as it takes
+	 */
+	RateLimitingInterceptor(double qps, int burst, long maxWait) {
+		this(qps, burst, maxWait, System::nanoTime);
+	}
+
+	RateLimitingInterceptor(double qps, int burst, long maxWait, LongSupplier nanoTime) {
+		this.qps = qps;
+		this.burst = Math.max(1, burst);
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+		this.nanoTime = nanoTime;
+		this.tokens = this.burst;
+		this.lastRefill = nanoTime.getAsLong();
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		long wait = reserve();
+		if (wait < 0) {
+			throw new InterruptedIOException(String.format(
+					"Rate limit of %s requests per second exceeded, requests queued for more than %d ms",
+					qps, TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)));
+		}
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+			}
+		}
+		return chain.proceed(chain.request());
+	}
+
+	/**
+	 * Take a token, going into debt if the bucket is empty so that later callers queue up behind this one.
+	 *
+	 * @return the number of nanoseconds to wait until the token is available, or {@code -1} if that is longer
+	 * than the maximum wait, in which case no token is taken
+	 */
+	synchronized long reserve() {
+		long now = nanoTime.getAsLong();
+		tokens = Math.min(burst, tokens + (now - lastRefill) * qps / TimeUnit.SECONDS.toNanos(1));
+		lastRefill = now;
+		long wait = tokens >= 1 ? 0 : (long) ((1 - tokens) / qps * TimeUnit.SECONDS.toNanos(1));
+		if (maxWaitNanos > 0 && wait > maxWaitNanos) {
+			return -1;
+		}
+		tokens -= 1;
+		return wait;
+	}
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+
+import org.springframework.cloud.deployer.spi.app.AppDeployer;
+import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
+import org.springframework.cloud.deployer.spi.util.ByteSizeUtils;
+import org.springframework.cloud.deployer.spi.util.CommandLineTokenizer;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * The {@code spring.cloud.deployer.kubernetes.*} settings of one deployment request, resolved against the
+ * {@link KubernetesDeployerProperties} in a single pass over the deployment properties. Values are parsed,
+ * validated and defaulted when the settings are resolved, so an invalid request fails before anything
+ * is created for it.
+ *
+ * The volumes and volume mounts are not part of the settings, their YAML is parsed (and cached) by the
+ * deployer and the container factory.
+ */
+public class ResolvedKubernetesDeploymentSettings {
+
+	static final String PREFIX = "spring.cloud.deployer.kubernetes.";
+
+	private static Log logger = LogFactory.getLog(ResolvedKubernetesDeploymentSettings.class);
+
+	private final Map<String, Quantity> limits;
+
+	private final Map<String, Quantity> requests;
+
+	private final ImagePullPolicy imagePullPolicy;
+
+	private final boolean hostNetwork;
+
+	private final EntryPointStyle entryPointStyle;
+
+	private final Map<String, String> environmentVariables;
+
+	private final List<Integer> containerPorts;
+
+	private final List<String> containerCommand;
+
+	private final boolean createLoadBalancer;
+
+	private final boolean createNodePort;
+
+	private final Integer nodePort;
+
+	private final int minReadySeconds;
+
+	private final String maxSurge;
+
+	private final String maxUnavailable;
+
+	private final Integer autoscalingMin;
+
+	private final Integer autoscalingMax;
+
+	private final Integer autoscalingTargetCpuUtilization;
+
+	private final Map<String, String> autoscalingMetrics;
+
+	private ResolvedKubernetesDeploymentSettings(KubernetesDeployerProperties properties,
+	                                            Map<String, String> deploymentProperties) {
+		String commonMemory = null;
+		String commonCpu = null;
+		Map<String, String> settings = new HashMap<>();
+		for (Map.Entry<String, String> property : deploymentProperties.entrySet()) {
+			String key = property.getKey();
+			if (key.startsWith(PREFIX)) {
+				settings.put(key.substring(PREFIX.length()), property.getValue());
+			}
+			else if (AppDeployer.MEMORY_PROPERTY_KEY.equals(key)) {
+				commonMemory = property.getValue();
+			}
+			else if (AppDeployer.CPU_PROPERTY_KEY.equals(key)) {
+				commonCpu = property.getValue();
+			}
+		}
+
+		this.limits = resolveLimits(properties, settings, commonMemory, commonCpu);
+		this.requests = resolveRequests(properties, settings);
+		this.imagePullPolicy = resolveImagePullPolicy(properties, settings.get("imagePullPolicy"));
+
+		String hostNetwork = settings.get("hostNetwork");
+		this.hostNetwork = StringUtils.isEmpty(hostNetwork) ? properties.isHostNetwork() : Boolean.valueOf(hostNetwork);
+
+		EntryPointStyle entryPointStyle = null;
+		if (settings.get("entryPointStyle") != null) {
+			try {
+				entryPointStyle = EntryPointStyle.valueOf(settings.get("entryPointStyle").toLowerCase());
+			}
+			catch (IllegalArgumentException ignore) {}
+		}
+		this.entryPointStyle = entryPointStyle != null ? entryPointStyle : properties.getEntryPointStyle();
+
+		Map<String, String> environmentVariables = new HashMap<>();
+		for (String envVar : properties.getEnvironmentVariables()) {
+			putEnvironmentVariable(environmentVariables, envVar);
+		}
+		// additional variables set at the app level, e.g. to set JAVA_OPTS independently for each app
+		if (settings.get("environmentVariables") != null) {
+			for (String envVar : settings.get("environmentVariables").split(",")) {
+				putEnvironmentVariable(environmentVariables, envVar);
+			}
+		}
+		this.environmentVariables = Collections.unmodifiableMap(environmentVariables);
+
+		List<Integer> containerPorts = new ArrayList<>();
+		if (settings.get("containerPorts") != null) {
+			for (String containerPort : settings.get("containerPorts").split(",")) {
+				containerPorts.add(Integer.parseInt(containerPort.trim()));
+			}
+		}
+		this.containerPorts = Collections.unmodifiableList(containerPorts);
+
+		String containerCommand = settings.get("containerCommand");
+		this.containerCommand = Collections.unmodifiableList(containerCommand == null ? new ArrayList<>() :
+				new CommandLineTokenizer(containerCommand).getArgs());
+
+		String createLoadBalancer = settings.get("createLoadBalancer");
+		String createNodePort = settings.get("createNodePort");
+		if (createLoadBalancer != null && createNodePort != null) {
+			throw new IllegalArgumentException("Cannot create NodePort and LoadBalancer at the same time.");
+		}
+		this.createLoadBalancer = createLoadBalancer == null ?
+				properties.isCreateLoadBalancer() : "true".equals(createLoadBalancer.toLowerCase());
+		this.createNodePort = createNodePort != null;
+		if (createNodePort != null && !"true".equals(createNodePort.toLowerCase())) {
+			try {
+				this.nodePort = Integer.valueOf(createNodePort);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						String.format("Invalid value: %s: provided port is not valid.", createNodePort));
+			}
+		}
+		else {
+			this.nodePort = null;
+		}
+
+		String minReadySeconds = settings.get("minReadySeconds");
+		this.minReadySeconds = StringUtils.isEmpty(minReadySeconds) ?
+				properties.getMinReadySeconds() : parseInt("minReadySeconds", minReadySeconds);
+		String maxSurge = settings.get("rollingUpdate.maxSurge");
+		this.maxSurge = parseIntOrPercent("rollingUpdate.maxSurge",
+				StringUtils.isEmpty(maxSurge) ? properties.getRollingUpdate().getMaxSurge() : maxSurge);
+		String maxUnavailable = settings.get("rollingUpdate.maxUnavailable");
+		this.maxUnavailable = parseIntOrPercent("rollingUpdate.maxUnavailable",
+				StringUtils.isEmpty(maxUnavailable) ? properties.getRollingUpdate().getMaxUnavailable() : maxUnavailable);
+
+		this.autoscalingMin = parseOptionalInt("autoscaling.min", settings.get("autoscaling.min"));
+		this.autoscalingMax = parseOptionalInt("autoscaling.max", settings.get("autoscaling.max"));
+		this.autoscalingTargetCpuUtilization = parseOptionalInt("autoscaling.targetCpuUtilization",
+				settings.get("autoscaling.targetCpuUtilization"));
+		Map<String, String> autoscalingMetrics = new LinkedHashMap<>();
+		for (String metric : StringUtils.commaDelimitedListToStringArray(settings.get("autoscaling.metrics"))) {
+			String[] target = metric.split("=", 2);
+			if (target.length != 2) {
+				throw new IllegalArgumentException(String.format("Invalid autoscaling metric target '%s'", metric));
+			}
+			autoscalingMetrics.put(target[0].trim(), target[1].trim());
+		}
+		this.autoscalingMetrics = Collections.unmodifiableMap(autoscalingMetrics);
+		if (autoscalingMax == null && (autoscalingMin != null || autoscalingTargetCpuUtilization != null
+				|| !autoscalingMetrics.isEmpty())) {
+			throw new IllegalArgumentException(PREFIX + "autoscaling.max is required to autoscale an app");
+		}
+	}
+
+	/**
+	 * Copy resolved settings, for subclasses that override some of them, e.g. a deployer overriding
+	 * {@code resolveSettings} to customize the resources of its pods.
+	 *
+	 * @param settings the settings to copy
+	 */
+	protected ResolvedKubernetesDeploymentSettings(ResolvedKubernetesDeploymentSettings settings) {
+		this.limits = settings.limits;
+		this.requests = settings.requests;
+		this.imagePullPolicy = settings.imagePullPolicy;
+		this.hostNetwork = settings.hostNetwork;
+		this.entryPointStyle = settings.entryPointStyle;
+		this.environmentVariables = settings.environmentVariables;
+		this.containerPorts = settings.containerPorts;
+		this.containerCommand = settings.containerCommand;
+		this.createLoadBalancer = settings.createLoadBalancer;
+		this.createNodePort = settings.createNodePort;
+		this.nodePort = settings.nodePort;
+		this.minReadySeconds = settings.minReadySeconds;
+		this.maxSurge = settings.maxSurge;
+		this.maxUnavailable = settings.maxUnavailable;
+		this.autoscalingMin = settings.autoscalingMin;
+		this.autoscalingMax = settings.autoscalingMax;
+		this.autoscalingTargetCpuUtilization = settings.autoscalingTargetCpuUtilization;
+		this.autoscalingMetrics = settings.autoscalingMetrics;
+	}
+
+	/**
+	 * Resolve the settings of a deployment request.
+	 *
+	 * @param properties the deployer properties providing the defaults
+	 * @param request the deployment request
+	 * @return the resolved settings
+	 * @throws IllegalArgumentException if a setting of the request is invalid
+	 */
+	public static ResolvedKubernetesDeploymentSettings resolve(KubernetesDeployerProperties properties,
+	                                                           AppDeploymentRequest request) {
+		return new ResolvedKubernetesDeploymentSettings(properties, request.getDeploymentProperties());
+	}
+
+	/**
+	 * @return the memory and cpu limits of the container
+	 */
+	public Map<String, Quantity> getLimits() {
+		return limits;
+	}
+
+	/**
+	 * @return the memory and cpu requests of the container, containing only those that are set
+	 */
+	public Map<String, Quantity> getRequests() {
+		return requests;
+	}
+
+	public ImagePullPolicy getImagePullPolicy() {
+		return imagePullPolicy;
+	}
+
+	public boolean isHostNetwork() {
+		return hostNetwork;
+	}
+
+	public EntryPointStyle getEntryPointStyle() {
+		return entryPointStyle;
+	}
+
+	/**
+	 * @return the deployer environment variables, overridden by those of the app
+	 */
+	public Map<String, String> getEnvironmentVariables() {
+		return environmentVariables;
+	}
+
+	public List<Integer> getContainerPorts() {
+		return containerPorts;
+	}
+
+	/**
+	 * @return the command overriding the entry point of the container, or an empty list to keep it
+	 */
+	public List<String> getContainerCommand() {
+		return containerCommand;
+	}
+
+	public boolean isCreateLoadBalancer() {
+		return createLoadBalancer;
+	}
+
+	public boolean isCreateNodePort() {
+		return createNodePort;
+	}
+
+	/**
+	 * @return the node port to expose the service on, or {@code null} to have Kubernetes allocate one
+	 */
+	public Integer getNodePort() {
+		return nodePort;
+	}
+
+	public int getMinReadySeconds() {
+		return minReadySeconds;
+	}
+
+	public String getMaxSurge() {
+		return maxSurge;
+	}
+
+	public String getMaxUnavailable() {
+		return maxUnavailable;
+	}
+
+	/**
+	 * @return whether the app gets a horizontal pod autoscaler
+	 */
+	public boolean isAutoscaled() {
+		return autoscalingMax != null;
+	}
+
+	/**
+	 * @return the minimum number of replicas of an autoscaled app, or {@code null} for the Kubernetes default
+	 */
+	public Integer getAutoscalingMin() {
+		return autoscalingMin;
+	}
+
+	public Integer getAutoscalingMax() {
+		return autoscalingMax;
+	}
+
+	public Integer getAutoscalingTargetCpuUtilization() {
+		return autoscalingTargetCpuUtilization;
+	}
+
+	/**
+	 * @return the average value targets of custom per-pod metrics, keyed by metric name
+	 */
+	public Map<String, String> getAutoscalingMetrics() {
+		return autoscalingMetrics;
+	}
+
+	/**
+	 * Also supports the deprecated {@code spring.cloud.deployer.kubernetes.memory/cpu} properties, which take
+	 * precedence over the common deployer properties but not over {@code limits.memory/cpu}.
+	 */
+	private static Map<String, Quantity> resolveLimits(KubernetesDeployerProperties properties,
+	                                                   Map<String, String> settings, String commonMemory,
+	                                                   String commonCpu) {
+		String memory = settings.get("memory");
+		if (commonMemory != null) {
+			String memDeployer = ByteSizeUtils.parseToMebibytes(commonMemory) + "Mi";
+			if (memory == null) {
+				memory = memDeployer;
+			}
+			else {
+				logger.warn(String.format("Both " + AppDeployer.MEMORY_PROPERTY_KEY +
+								"=%s and spring.cloud.deployer.kubernetes.memory=%s specified, the latter will take precedence.",
+						memDeployer, memory));
+			}
+		}
+		if (settings.get("limits.memory") != null) {
+			memory = settings.get("limits.memory");
+		}
+		if (memory == null) {
+			memory = properties.getLimits().getMemory() != null ? properties.getLimits().getMemory() : properties.getMemory();
+		}
+
+		String cpu = settings.get("cpu");
+		if (commonCpu != null) {
+			if (cpu == null) {
+				cpu = commonCpu;
+			}
+			else {
+				logger.warn(String.format("Both " + AppDeployer.CPU_PROPERTY_KEY +
+								"=%s and spring.cloud.deployer.kubernetes.cpu=%s specified, the latter will take precedence.",
+						commonCpu, cpu));
+			}
+		}
+		if (settings.get("limits.cpu") != null) {
+			cpu = settings.get("limits.cpu");
+		}
+		if (cpu == null) {
+			cpu = properties.getLimits().getCpu() != null ? properties.getLimits().getCpu() : properties.getCpu();
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Using limits - cpu: " + cpu + " mem: " + memory);
+		}
+		Map<String, Quantity> limits = new HashMap<>();
+		limits.put("memory", new Quantity(memory));
+		limits.put("cpu", new Quantity(cpu));
+		return Collections.unmodifiableMap(limits);
+	}
+
+	private static Map<String, Quantity> resolveRequests(KubernetesDeployerProperties properties,
+	                                                     Map<String, String> settings) {
+		String memory = settings.get("requests.memory");
+		if (memory == null) {
+			memory = properties.getRequests().getMemory();
+		}
+		String cpu = settings.get("requests.cpu");
+		if (cpu == null) {
+			cpu = properties.getRequests().getCpu();
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Using requests - cpu: " + cpu + " mem: " + memory);
+		}
+		Map<String, Quantity> requests = new HashMap<>();
+		if (memory != null) {
+			requests.put("memory", new Quantity(memory));
+		}
+		if (cpu != null) {
+			requests.put("cpu", new Quantity(cpu));
+		}
+		return Collections.unmodifiableMap(requests);
+	}
+
+	/**
+	 * An override that can't be parsed falls back to {@link ImagePullPolicy#Always}.
+	 */
+	private static ImagePullPolicy resolveImagePullPolicy(KubernetesDeployerProperties properties, String override) {
+		if (override == null) {
+			return properties.getImagePullPolicy();
+		}
+		ImagePullPolicy pullPolicy = ImagePullPolicy.relaxedValueOf(override);
+		if (pullPolicy == null) {
+			logger.warn("Parsing of pull policy " + override + " failed, using default \"Always\".");
+			return ImagePullPolicy.Always;
+		}
+		return pullPolicy;
+	}
+
+	private static void putEnvironmentVariable(Map<String, String> environmentVariables, String envVar) {
+		String[] strings = envVar.split("=", 2);
+		Assert.isTrue(strings.length == 2, "Invalid environment variable declared: " + envVar);
+		environmentVariables.put(strings[0], strings[1]);
+	}
+
+	private static Integer parseOptionalInt(String name, String value) {
+		return StringUtils.isEmpty(value) ? null : parseInt(name, value);
+	}
+
+	private static int parseInt(String name, String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("Invalid value '%s' for %s%s", value, PREFIX, name), e);
+		}
+	}
+
+	/**
+	 * @return the value, trimmed, if it is a number of pods or a percentage of pods such as {@code 25%}
+	 */
+	private static String parseIntOrPercent(String name, String value) {
+		String trimmed = value == null ? "" : value.trim();
+		if (!trimmed.matches("\\d+%?")) {
+			throw new IllegalArgumentException(String.format("Invalid value '%s' for %s%s", value, PREFIX, name));
+		}
+		return trimmed;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Retries requests the API server throttled or failed to serve. A request answered with {@code 429 Too Many
+ * Requests} was not processed and is retried whatever its method, while idempotent requests are also retried
+ * on {@code 5xx} responses and I/O errors. The delay before a retry is the {@code Retry-After} of the response
+ * if it has one, and an exponential backoff with full jitter otherwise, both capped at a maximum.
+ */
+class RetryInterceptor implements Interceptor {
+
+	private static Log logger = LogFactory.getLog(RetryInterceptor.class);
+
+	private final int maxRetries;
+
+	private final long backoff;
+
+	private final long maxBackoff;
+
+	/**
+	 * @param maxRetries the maximum number of times a request is retried
+	 * @param backoff the base of the exponential backoff, in milliseconds
+	 * @param maxBackoff the maximum delay before a retry, in milliseconds
+	 */
+	RetryInterceptor(int maxRetries, long backoff, long maxBackoff) {
+		this.maxRetries = maxRetries;
+		this.backoff = backoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		boolean idempotent = isIdempotent(request.method());
+		for (int attempt = 0; ; attempt++) {
+			Response response;
+			try {
+				response = chain.proceed(request);
+			}
+			catch (IOException e) {
+				if (!idempotent || attempt >= maxRetries || e instanceof InterruptedIOException) {
+					throw e;
+				}
+				logger.debug(String.format("Retrying %s %s after %s", request.method(), request.url(), e));
+				sleep(delay(attempt, null));
+				continue;
+			}
+			int code = response.code();
+			boolean retryable = code == 429 || (idempotent && code >= 500 && code != 501);
+			if (!retryable || attempt >= maxRetries) {
+				return response;
+			}
+			String retryAfter = response.header("Retry-After");
+			response.close();
+			logger.debug(String.format("Retrying %s %s after status %d", request.method(), request.url(), code));
+			sleep(delay(attempt, retryAfter));
+		}
+	}
+
+	/**
+	 * @param attempt the number of the failed attempt, starting at 0
+	 * @param retryAfter the {@code Retry-After} header of the response, or {@code null}
+	 * @return the number of milliseconds to wait before the next attempt
+	 */
+	long delay(int attempt, String retryAfter) {
+		if (retryAfter != null) {
+			try {
+				return Math.min(maxBackoff, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+			}
+			catch (NumberFormatException ignore) {
+				// an HTTP date, which the API server does not send, falls back to the backoff
+			}
+		}
+		long cap = Math.min(maxBackoff, backoff << Math.min(attempt, 30));
+		return ThreadLocalRandom.current().nextLong(cap + 1);
+	}
+
+	private static boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+	}
+
+	private static void sleep(long millis) throws IOException {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to retry");
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: while a call for a key is in flight, further callers for
+ * that key wait for it and share its result (or exception) rather than making a call of their own.
+ * Nothing is cached once the call has completed.
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+	private final AtomicLong executions = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	V execute(K key, Supplier<V> supplier) {
+		CompletableFuture<V> call = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = calls.putIfAbsent(key, call);
+		if (inFlight != null) {
+			coalesced.incrementAndGet();
+			try {
+				return inFlight.join();
+			}
+			catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+		executions.incrementAndGet();
+		try {
+			V value = supplier.get();
+			call.complete(value);
+			return value;
+		}
+		catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		}
+		finally {
+			calls.remove(key, call);
+		}
+	}
+
+	/**
+	 * @return the number of calls that were actually made
+	 */
+	long getExecutions() {
+		return executions.get();
+	}
+
+	/**
+	 * @return the number of calls that shared the result of a call in flight instead of being made
+	 */
+	long getCoalesced() {
+		return coalesced.get();
+	}
+}
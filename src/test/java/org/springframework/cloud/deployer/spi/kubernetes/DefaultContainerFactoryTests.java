@@ -260,6 +260,33 @@ public class DefaultContainerFactoryTests {
 				new VolumeMount("/test/nfs/overridden", "testnfs", true, null));
 	}
 
+	@Test
+	public void createWithSameVolumeMountedAtSeveralPaths() {
+		KubernetesDeployerProperties kubernetesDeployerProperties = new KubernetesDeployerProperties();
+		kubernetesDeployerProperties.setVolumeMounts(Stream.of(
+				new VolumeMount("/test/default", "testpvc", false, null),
+				new VolumeMount("/test/nfs", "testnfs", false, null))
+				.collect(Collectors.toList()));
+		DefaultContainerFactory defaultContainerFactory = new DefaultContainerFactory(kubernetesDeployerProperties);
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.volumeMounts",
+				"["
+						+ "{name: 'testpvc', mountPath: '/test/config', subPath: 'config'}, "
+						+ "{name: 'testpvc', mountPath: '/test/data', subPath: 'data'}"
+					+ "]");
+		AppDeploymentRequest appDeploymentRequest = new AppDeploymentRequest(new AppDefinition("app-test", null),
+				getResource(), props);
+
+		// the parsed mounts are cached, so a caller modifying the mounts it got must not affect later containers
+		defaultContainerFactory.getVolumeMounts(appDeploymentRequest).get(0).setMountPath("/test/modified");
+
+		assertThat(defaultContainerFactory.create("app-test", appDeploymentRequest, null, null, false)
+				.getVolumeMounts()).containsExactly(
+						new VolumeMount("/test/config", "testpvc", null, "config"),
+						new VolumeMount("/test/data", "testpvc", null, "data"),
+						new VolumeMount("/test/nfs", "testnfs", false, null));
+	}
+
 	private Resource getResource() {
 		return new DockerResource(
 				"springcloud/spring-cloud-deployer-spi-test-app:latest");
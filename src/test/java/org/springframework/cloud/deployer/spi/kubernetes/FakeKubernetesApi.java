@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+/**
+ * Stands in for the API server of a Kubernetes client: requests are answered with the responses set up for
+ * their method and path, without going over the network, and recorded. Requests without a response set up
+ * get a {@code 404}, except for creates, which echo the created resource with a uid added.
+ */
+class FakeKubernetesApi implements Interceptor {
+
+	static final String NAMESPACE = "test";
+
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Map<String, Deque<CannedResponse>> responses = new HashMap<>();
+
+	private final List<RecordedRequest> requests = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Answer requests with the given method and path with a response. Responses set up for the same request
+	 * are served in turn, the last one for all further requests.
+	 *
+	 * @param method the HTTP method, e.g. {@code GET}
+	 * @param path the path of the URL, e.g. {@code /api/v1/namespaces/test/pods}
+	 * @param code the HTTP status of the response
+	 * @param body the JSON body of the response
+	 * @return this fake
+	 */
+	synchronized FakeKubernetesApi on(String method, String path, int code, String body) {
+		responses.computeIfAbsent(method + " " + path, key -> new ArrayDeque<>()).add(new CannedResponse(code, body));
+		return this;
+	}
+
+	/**
+	 * @return the given JSON written with single quotes, to spare the escaping of double quotes
+	 */
+	static String json(String singleQuoted) {
+		return singleQuoted.replace('\'', '"');
+	}
+
+	/**
+	 * @return a list of the given JSON items, the way the API server returns it
+	 */
+	static String list(String... items) {
+		return "{\"metadata\":{},\"items\":[" + String.join(",", items) + "]}";
+	}
+
+	/**
+	 * @return a client of the namespace {@value #NAMESPACE} sending its requests to this fake
+	 */
+	KubernetesClient client() {
+		Config config = new ConfigBuilder()
+				.withMasterUrl("http://kubernetes.test/")
+				.withNamespace(NAMESPACE)
+				.build();
+		return new DefaultKubernetesClient(new OkHttpClient.Builder().addInterceptor(this).build(), config);
+	}
+
+	/**
+	 * @return the requests received, in the order they were received
+	 */
+	List<RecordedRequest> getRequests() {
+		return new ArrayList<>(requests);
+	}
+
+	/**
+	 * @return the requests received with the given method and path
+	 */
+	List<RecordedRequest> getRequests(String method, String path) {
+		return requests.stream()
+				.filter(request -> request.method.equals(method) && request.url.encodedPath().equals(path))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		String body = null;
+		if (request.body() != null) {
+			Buffer buffer = new Buffer();
+			request.body().writeTo(buffer);
+			body = buffer.readUtf8();
+		}
+		requests.add(new RecordedRequest(request.method(), request.url(), body));
+		CannedResponse response = response(request.method() + " " + request.url().encodedPath());
+		if (response == null) {
+			response = "POST".equals(request.method()) ? new CannedResponse(201, withUid(body))
+					: new CannedResponse(404, "{\"kind\":\"Status\",\"code\":404}");
+		}
+		return new Response.Builder()
+				.request(request)
+				.protocol(Protocol.HTTP_1_1)
+				.code(response.code)
+				.message("Status " + response.code)
+				.body(ResponseBody.create(JSON, response.body))
+				.build();
+	}
+
+	private synchronized CannedResponse response(String key) {
+		Deque<CannedResponse> queue = responses.get(key);
+		if (queue == null) {
+			return null;
+		}
+		return queue.size() > 1 ? queue.poll() : queue.peek();
+	}
+
+	private String withUid(String body) throws IOException {
+		ObjectNode resource = (ObjectNode) objectMapper.readTree(body);
+		resource.with("metadata").put("uid", UUID.randomUUID().toString());
+		return resource.toString();
+	}
+
+	private static class CannedResponse {
+
+		private final int code;
+
+		private final String body;
+
+		CannedResponse(int code, String body) {
+			this.code = code;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * A request received by the fake.
+	 */
+	static class RecordedRequest {
+
+		final String method;
+
+		final HttpUrl url;
+
+		final String body;
+
+		RecordedRequest(String method, HttpUrl url, String body) {
+			this.method = method;
+			this.url = url;
+			this.body = body;
+		}
+	}
+}
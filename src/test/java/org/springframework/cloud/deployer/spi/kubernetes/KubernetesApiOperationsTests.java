@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.springframework.cloud.deployer.spi.kubernetes.FakeKubernetesApi.json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.springframework.cloud.deployer.spi.kubernetes.FakeKubernetesApi.RecordedRequest;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+
+/**
+ * Unit tests for {@link KubernetesApiOperations} against a fake API server.
+ */
+public class KubernetesApiOperationsTests {
+
+	private static final String PODS = "/api/v1/namespaces/test/pods";
+
+	private static final String GONE = "{\"kind\":\"Status\",\"code\":410}";
+
+	@Test
+	public void listStartsOverWhenContinueTokenExpired() {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", PODS, 200, page("a", "app-0"))
+				.on("GET", PODS, 410, GONE)
+				.on("GET", PODS, 200, page("b", "app-0"))
+				.on("GET", PODS, 200, page(null, "app-1"));
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client(), 1);
+
+		List<Pod> pods = apiOperations.listPodStatuses("spring-app-id=app", ReadConsistency.strong);
+
+		assertThat(pods).extracting("metadata.name").containsExactly("app-0", "app-1");
+		List<RecordedRequest> requests = api.getRequests("GET", PODS);
+		assertThat(requests).extracting(request -> request.url.queryParameter("continue"))
+				.containsExactly(null, "a", null, "b");
+	}
+
+	@Test
+	public void listGivesUpWhenContinueTokenKeepsExpiring() {
+		FakeKubernetesApi api = new FakeKubernetesApi();
+		for (int i = 0; i < 4; i++) {
+			api.on("GET", PODS, 200, page("a", "app-0")).on("GET", PODS, 410, GONE);
+		}
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client(), 1);
+
+		try {
+			apiOperations.listPodStatuses("spring-app-id=app", ReadConsistency.strong);
+			fail("Expected the list to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(410);
+		}
+		assertThat(api.getRequests("GET", PODS)).hasSize(8);
+	}
+
+	@Test
+	public void streamingListFailsWhenContinueTokenExpired() {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", PODS, 200, page("a", "app-0"))
+				.on("GET", PODS, 410, GONE);
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client(), 1);
+		List<Pod> pods = new ArrayList<>();
+
+		try {
+			apiOperations.listPodStatuses("spring-app-id=app", ReadConsistency.strong, pods::add);
+			fail("Expected the list to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(410);
+		}
+		assertThat(pods).hasSize(1);
+	}
+
+	@Test
+	public void cachedReadsMayBeServedFromWatchCache() {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, FakeKubernetesApi.list())
+				.on("GET", "/apis/apps/v1/namespaces/test/deployments/app", 200, json("{'metadata':{'name':'app'}}"));
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client());
+
+		apiOperations.exists(KubernetesApiOperations.CORE_API, "replicationcontrollers",
+				Collections.singletonMap("spring-app-id", "app"), ReadConsistency.cached);
+		apiOperations.get(KubernetesApiOperations.APPS_API, "deployments", "app", ReadConsistency.cached);
+
+		assertThat(api.getRequests()).extracting(request -> request.url.queryParameter("resourceVersion"))
+				.containsExactly("0", "0");
+	}
+
+	@Test
+	public void strongReadsAreNotServedFromWatchCache() {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, FakeKubernetesApi.list())
+				.on("GET", "/apis/apps/v1/namespaces/test/deployments/app", 200, json("{'metadata':{'name':'app'}}"));
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client());
+
+		apiOperations.exists(KubernetesApiOperations.CORE_API, "replicationcontrollers",
+				Collections.singletonMap("spring-app-id", "app"), ReadConsistency.strong);
+		apiOperations.get(KubernetesApiOperations.APPS_API, "deployments", "app", ReadConsistency.strong);
+
+		assertThat(api.getRequests()).extracting(request -> request.url.queryParameter("resourceVersion"))
+				.containsExactly(null, null);
+	}
+
+	@Test
+	public void cachedListOnlyAsksForCacheOnFirstPage() {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", PODS, 200, page("a", "app-0"))
+				.on("GET", PODS, 200, page(null, "app-1"));
+		KubernetesApiOperations apiOperations = new KubernetesApiOperations(api.client(), 1);
+
+		apiOperations.listPodStatuses("spring-app-id=app", ReadConsistency.cached);
+
+		List<RecordedRequest> requests = api.getRequests("GET", PODS);
+		assertThat(requests).extracting(request -> request.url.queryParameter("resourceVersion"))
+				.containsExactly("0", null);
+		assertThat(requests.get(1).url.queryParameter("continue")).isEqualTo("a");
+	}
+
+	private static String page(String continueToken, String podName) {
+		String metadata = continueToken != null ? "{'continue':'" + continueToken + "'}" : "{}";
+		return json("{'metadata':" + metadata + ",'items':[{'metadata':{'name':'" + podName + "',"
+				+ "'labels':{'spring-app-id':'app'}},'status':{'phase':'Running'}}]}");
+	}
+}
@@ -1,20 +1,54 @@
 package org.springframework.cloud.deployer.spi.kubernetes;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.springframework.cloud.deployer.spi.kubernetes.FakeKubernetesApi.json;
+import static org.springframework.cloud.deployer.spi.kubernetes.FakeKubernetesApi.list;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesTestFixtures.pod;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 import org.springframework.boot.bind.YamlConfigurationFactory;
 import org.springframework.cloud.deployer.resource.docker.DockerResource;
+import org.springframework.cloud.deployer.spi.app.AppDeployer;
+import org.springframework.cloud.deployer.spi.app.AppStatus;
+import org.springframework.cloud.deployer.spi.app.DeploymentState;
 import org.springframework.cloud.deployer.spi.core.AppDefinition;
 import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
+import org.springframework.cloud.deployer.spi.kubernetes.FakeKubernetesApi.RecordedRequest;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
+import io.fabric8.kubernetes.api.model.Container;
+import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.LoadBalancerIngressBuilder;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodSpec;
+import io.fabric8.kubernetes.api.model.ReplicationController;
+import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
 import io.fabric8.kubernetes.api.model.VolumeBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
 
 /**
  * Unit tests for {@link KubernetesAppDeployer}
@@ -80,10 +114,861 @@ public class KubernetesAppDeployerTest {
 				new VolumeBuilder().withName("testnfs").withNewNfs("/test/override/nfs", null, "192.168.1.1:111").build());
 	}
 
+	@Test
+	public void derivedIndexedPodSpecMatchesFullBuild() throws Exception {
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		Map<String, String> props = new HashMap<>();
+		props.put(AppDeployer.GROUP_PROPERTY_KEY, "group");
+		props.put("spring.cloud.deployer.kubernetes.environmentVariables", "JAVA_OPTS=-Xmx64m");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+		deployer = new KubernetesAppDeployer(properties, null);
+		// a subclass of the default factory is not trusted to only use the index for the name and index variables
+		KubernetesAppDeployer fullBuildDeployer = new KubernetesAppDeployer(properties, null,
+				new DefaultContainerFactory(properties) {});
+
+		for (int index = 0; index < 3; index++) {
+			assertThat(deployer.createPodSpec("group-app-test", request, 8080, index, false))
+					.isEqualTo(fullBuildDeployer.createPodSpec("group-app-test", request, 8080, index, false));
+		}
+	}
+
+	@Test
+	public void cachedPodSpecIsNotShared() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				new HashMap<>());
+
+		PodSpec podSpec = deployer.createPodSpec("app-test", request, 8080, null, false);
+		podSpec.getContainers().get(0).getEnv().add(new EnvVar("EXTRA", "value", null));
+		podSpec.getContainers().get(0).setName("changed");
+
+		PodSpec cached = deployer.createPodSpec("app-test", request, 8080, null, false);
+		assertThat(cached.getContainers().get(0).getName()).isEqualTo("app-test");
+		assertThat(cached.getContainers().get(0).getEnv()).doesNotContain(new EnvVar("EXTRA", "value", null));
+	}
+
+	@Test
+	public void cachedPodSpecIsNotReusedWithOtherDeployerProperties() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				new HashMap<>());
+		assertThat(deployer.createPodSpec("app-test", request, 8080, null, false).getHostNetwork()).isNotEqualTo(true);
+
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setHostNetwork(true);
+		deployer.properties = properties;
+
+		assertThat(deployer.createPodSpec("app-test", request, 8080, null, false).getHostNetwork()).isTrue();
+	}
+
+	@Test
+	public void podSpecUsesSettingsCustomizedBySubclass() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null) {
+
+			@Override
+			protected ResolvedKubernetesDeploymentSettings resolveSettings(AppDeploymentRequest request) {
+				return new ResolvedKubernetesDeploymentSettings(super.resolveSettings(request)) {
+
+					@Override
+					public boolean isHostNetwork() {
+						return true;
+					}
+				};
+			}
+		};
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				new HashMap<>());
+
+		assertThat(deployer.createPodSpec("app-test", request, 8080, null, false).getHostNetwork()).isTrue();
+	}
+
+	@Test
+	public void buildAppStatusesPartitionsPodsByAppId() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		List<Pod> pods = Arrays.asList(pod("app1-abcde", "app1"), pod("app2-abcde", "app2"),
+				pod("app1-fghij", "app1"), pod("other-abcde", "other"));
+
+		Map<String, AppStatus> statuses = deployer.buildAppStatuses(Arrays.asList("app1", "app2", "app3"), pods);
+
+		assertThat(statuses).containsOnlyKeys("app1", "app2", "app3");
+		assertThat(statuses.get("app1").getInstances()).containsOnlyKeys("app1-abcde", "app1-fghij");
+		assertThat(statuses.get("app2").getInstances()).containsOnlyKeys("app2-abcde");
+		assertThat(statuses.get("app3").getInstances()).isEmpty();
+		assertThat(statuses.get("app3").getState()).isEqualTo(DeploymentState.unknown);
+	}
+
+	@Test
+	public void statusFromPodCacheWhileSynced() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi();
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		KubernetesDeployerProperties cacheProperties = new KubernetesDeployerProperties();
+		cacheProperties.setPodCacheResyncPeriod(0);
+		KubernetesPodCacheTests.StubPodCache podCache = new KubernetesPodCacheTests.StubPodCache(cacheProperties);
+		podCache.pods = Arrays.asList(pod("app-test-abcde", "app-test"), pod("other-abcde", "other"));
+		podCache.start();
+		deployer.setPodCache(podCache);
+		try {
+			AppStatus status = deployer.status("app-test");
+
+			assertThat(status.getInstances()).containsOnlyKeys("app-test-abcde");
+			assertThat(api.getRequests()).isEmpty();
+		}
+		finally {
+			podCache.close();
+		}
+	}
+
+	@Test
+	public void statusFallsBackToApiWhilePodCacheNotSynced() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/pods", 200, "{\"kind\":\"PodList\",\"metadata\":{},\"items\":["
+						+ "{\"metadata\":{\"name\":\"app-test-fghij\",\"labels\":{\"spring-app-id\":\"app-test\"}},"
+						+ "\"status\":{\"phase\":\"Pending\"}}]}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		deployer.setPodCache(new KubernetesPodCache(null, new KubernetesDeployerProperties()));
+
+		AppStatus status = deployer.status("app-test");
+
+		assertThat(status.getInstances()).containsOnlyKeys("app-test-fghij");
+		List<RecordedRequest> requests = api.getRequests("GET", "/api/v1/namespaces/test/pods");
+		assertThat(requests).hasSize(1);
+		assertThat(requests.get(0).url.queryParameter("labelSelector")).isEqualTo("spring-app-id=app-test");
+	}
+
+	@Test
+	public void statusOfGroupSelectsAppsByGroupLabel() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list(
+						json("{'metadata':{'name':'g-a','labels':{'spring-app-id':'g-a','spring-group-id':'g'}}}"),
+						json("{'metadata':{'name':'g-b','labels':{'spring-app-id':'g-b','spring-group-id':'g'}}}")))
+				.on("GET", "/api/v1/namespaces/test/pods", 200, list(
+						json("{'metadata':{'name':'g-a-abcde','labels':{'spring-app-id':'g-a'}},'status':{'phase':'Pending'}}"),
+						json("{'metadata':{'name':'g-a-fghij','labels':{'spring-app-id':'g-a'}},'status':{'phase':'Pending'}}")));
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		Map<String, AppStatus> statuses = deployer.statusOfGroup("g");
+
+		assertThat(statuses).containsOnlyKeys("g-a", "g-b");
+		assertThat(statuses.get("g-a").getInstances()).containsOnlyKeys("g-a-abcde", "g-a-fghij");
+		// an app of the group whose pods are gone still has a status
+		assertThat(statuses.get("g-b").getInstances()).isEmpty();
+		assertThat(api.getRequests("GET", "/api/v1/namespaces/test/replicationcontrollers").get(0).url
+				.queryParameter("labelSelector")).isEqualTo("spring-group-id=g");
+		List<RecordedRequest> podRequests = api.getRequests("GET", "/api/v1/namespaces/test/pods");
+		assertThat(podRequests).hasSize(1);
+		assertThat(podRequests.get(0).url.queryParameter("labelSelector")).isEqualTo("spring-group-id=g");
+	}
+
+	@Test
+	public void statusReusesAutoscalerAttributes() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers/app-test", 200,
+						autoscaler("app-test"));
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		KubernetesDeployerProperties cacheProperties = new KubernetesDeployerProperties();
+		cacheProperties.setPodCacheResyncPeriod(0);
+		KubernetesPodCacheTests.StubPodCache podCache = new KubernetesPodCacheTests.StubPodCache(cacheProperties);
+		Pod pod = pod("app-test-abcde", "app-test");
+		pod.getMetadata().getLabels().put("spring-autoscaled", "true");
+		podCache.pods = Collections.singletonList(pod);
+		podCache.start();
+		deployer.setPodCache(podCache);
+		try {
+			deployer.status("app-test");
+			AppStatus status = deployer.status("app-test");
+
+			assertThat(status.getInstances().get("app-test-abcde").getAttributes())
+					.containsEntry("autoscaler_max_replicas", "5")
+					.containsEntry("autoscaler_current_replicas", "3");
+			assertThat(api.getRequests()).hasSize(1);
+		}
+		finally {
+			podCache.close();
+		}
+	}
+
+	@Test
+	public void statusesListAutoscalersOfSeveralApps() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/pods", 200, list(
+						json("{'metadata':{'name':'a-abcde','labels':{'spring-app-id':'a','spring-autoscaled':'true'}},"
+								+ "'status':{'phase':'Pending'}}"),
+						json("{'metadata':{'name':'b-abcde','labels':{'spring-app-id':'b','spring-autoscaled':'true'}},"
+								+ "'status':{'phase':'Pending'}}"),
+						json("{'metadata':{'name':'c-abcde','labels':{'spring-app-id':'c'}},'status':{'phase':'Pending'}}")))
+				.on("GET", "/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers", 200,
+						list(autoscaler("a"), autoscaler("b")));
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		Map<String, AppStatus> statuses = deployer.statuses(Arrays.asList("a", "b", "c"));
+
+		assertThat(statuses.get("a").getInstances().get("a-abcde").getAttributes())
+				.containsEntry("autoscaler_max_replicas", "5");
+		assertThat(statuses.get("b").getInstances().get("b-abcde").getAttributes())
+				.containsEntry("autoscaler_max_replicas", "5");
+		assertThat(statuses.get("c").getInstances().get("c-abcde").getAttributes())
+				.doesNotContainKey("autoscaler_max_replicas");
+		List<RecordedRequest> autoscalerRequests = api.getRequests("GET",
+				"/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers");
+		assertThat(autoscalerRequests).hasSize(1);
+		assertThat(autoscalerRequests.get(0).url.queryParameter("labelSelector")).isEqualTo("spring-app-id in (a,b)");
+	}
+
+	@Test
+	public void statusOfGroupAddsAutoscalerAttributes() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list(
+						json("{'metadata':{'name':'g-a','labels':{'spring-app-id':'g-a','spring-group-id':'g'}}}")))
+				.on("GET", "/api/v1/namespaces/test/pods", 200, list(
+						json("{'metadata':{'name':'g-a-abcde','labels':{'spring-app-id':'g-a','spring-autoscaled':'true'}},"
+								+ "'status':{'phase':'Pending'}}")))
+				.on("GET", "/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers/g-a", 200, autoscaler("g-a"));
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		Map<String, AppStatus> statuses = deployer.statusOfGroup("g");
+
+		assertThat(statuses.get("g-a").getInstances().get("g-a-abcde").getAttributes())
+				.containsEntry("autoscaler_desired_replicas", "4");
+	}
+
+	@Test
+	public void statusOfEmptyGroup() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list());
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		assertThat(deployer.statusOfGroup("g")).isEmpty();
+		assertThat(api.getRequests("GET", "/api/v1/namespaces/test/pods")).isEmpty();
+	}
+
+	@Test
+	public void undeployGroupDeletesControllersByGroupLabel() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/services", 200, list(
+						json("{'metadata':{'name':'g-a','labels':{'spring-group-id':'g'},'ownerReferences':"
+								+ "[{'apiVersion':'v1','kind':'ReplicationController','name':'g-a','uid':'1'}]},"
+								+ "'spec':{'type':'ClusterIP'}}"),
+						// a service created before services were owned by their controller
+						json("{'metadata':{'name':'g-b','labels':{'spring-group-id':'g'}},'spec':{'type':'ClusterIP'}}")))
+				.on("GET", "/api/v1/namespaces/test/services/g-b", 200,
+						json("{'metadata':{'name':'g-b','namespace':'test'},'spec':{'type':'ClusterIP'}}"))
+				.on("DELETE", "/api/v1/namespaces/test/services/g-b", 200, "{}")
+				.on("DELETE", "/api/v1/namespaces/test/replicationcontrollers", 200, "{}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		deployer.undeployGroup("g");
+
+		assertThat(api.getRequests("DELETE", "/api/v1/namespaces/test/services/g-a")).isEmpty();
+		assertThat(api.getRequests("DELETE", "/api/v1/namespaces/test/services/g-b")).hasSize(1);
+		List<RecordedRequest> deletes = api.getRequests("DELETE", "/api/v1/namespaces/test/replicationcontrollers");
+		assertThat(deletes).hasSize(1);
+		assertThat(deletes.get(0).url.queryParameter("labelSelector")).isEqualTo("spring-group-id=g");
+		assertThat(deletes.get(0).body).contains("\"propagationPolicy\":\"Background\"");
+	}
+
+	@Test
+	public void undeployEmptyGroupFails() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/services", 200, list());
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		try {
+			deployer.undeployGroup("g");
+			fail("Expected undeploy of an empty group to fail");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).isEqualTo("Group 'g' is not deployed");
+		}
+		assertThat(api.getRequests()).extracting("method").doesNotContain("DELETE");
+	}
+
+	@Test
+	public void undeployGroupFailsWhenControllersCannotBeDeleted() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/services", 200, list(
+						json("{'metadata':{'name':'g-a','labels':{'spring-group-id':'g'},'ownerReferences':"
+								+ "[{'apiVersion':'v1','kind':'ReplicationController','name':'g-a','uid':'1'}]},"
+								+ "'spec':{'type':'ClusterIP'}}")))
+				.on("DELETE", "/api/v1/namespaces/test/replicationcontrollers", 500, "{}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		try {
+			deployer.undeployGroup("g");
+			fail("Expected undeploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(500);
+		}
+	}
+
+	@Test
+	public void deployIndexedInParallel() throws Exception {
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setDeployParallelism(1);
+		LatencyInjectingAppDeployer sequentialDeployer = new LatencyInjectingAppDeployer(properties, -1);
+		long sequentialTime = timeDeploy(sequentialDeployer, 8);
+
+		properties = bindDeployerProperties();
+		properties.setDeployParallelism(8);
+		LatencyInjectingAppDeployer parallelDeployer = new LatencyInjectingAppDeployer(properties, -1);
+		long parallelTime = timeDeploy(parallelDeployer, 8);
+
+		assertThat(sequentialDeployer.createdIndexes).containsOnly(0, 1, 2, 3, 4, 5, 6, 7);
+		assertThat(parallelDeployer.createdIndexes).containsOnly(0, 1, 2, 3, 4, 5, 6, 7);
+		assertThat(parallelTime).isLessThan(sequentialTime / 2);
+	}
+
+	@Test
+	public void deployIndexedInParallelCleansUpOnFailure() throws Exception {
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setDeployParallelism(4);
+		LatencyInjectingAppDeployer failingDeployer = new LatencyInjectingAppDeployer(properties, 2);
+
+		try {
+			timeDeploy(failingDeployer, 16);
+			fail("Expected deploy to fail");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage()).isEqualTo("Failed to create instance 2");
+		}
+		assertThat(failingDeployer.createdIndexes.size()).isLessThan(16);
+		assertThat(failingDeployer.removed).hasSameSizeAs(failingDeployer.createdIndexes);
+		for (int index : failingDeployer.createdIndexes) {
+			assertThat(failingDeployer.removed).contains("app-test-" + index);
+		}
+	}
+
+	@Test
+	public void deployIndexedRemovesOnlyWhatItCreated() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("POST", "/api/v1/namespaces/test/services", 201, json("{'metadata':{'name':'app-test-0'}}"))
+				.on("POST", "/api/v1/namespaces/test/services", 500, "{\"kind\":\"Status\",\"code\":500}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		try {
+			timeDeploy(deployer, 3);
+			fail("Expected deploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(500);
+		}
+
+		assertThat(deletedPaths(api)).containsExactly(
+				"/api/v1/namespaces/test/replicationcontrollers/app-test-1",
+				"/api/v1/namespaces/test/services/app-test-0",
+				"/api/v1/namespaces/test/replicationcontrollers/app-test-0");
+	}
+
+	@Test
+	public void deployIndexedLeavesAppAloneWhenAnInstanceAlreadyExists() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("POST", "/api/v1/namespaces/test/replicationcontrollers", 201,
+						json("{'metadata':{'name':'app-test-0','uid':'1'}}"))
+				.on("POST", "/api/v1/namespaces/test/replicationcontrollers", 409,
+						"{\"kind\":\"Status\",\"code\":409}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		try {
+			timeDeploy(deployer, 2);
+			fail("Expected deploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(409);
+		}
+
+		assertThat(api.getRequests()).extracting("method").doesNotContain("DELETE");
+	}
+
+	@Test
+	public void buildStatefulSetForIndexedApp() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		Map<String, String> props = new HashMap<>();
+		props.put(AppDeployer.GROUP_PROPERTY_KEY, "group");
+		props.put(AppDeployer.INDEXED_PROPERTY_KEY, "true");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		JsonNode statefulSet = deployer.buildStatefulSet("group-app-test", request, deployer.resolveSettings(request),
+				8080, 3);
+
+		assertThat(statefulSet.path("apiVersion").asText()).isEqualTo("apps/v1");
+		assertThat(statefulSet.path("metadata").path("name").asText()).isEqualTo("group-app-test");
+		JsonNode spec = statefulSet.path("spec");
+		assertThat(spec.path("replicas").asInt()).isEqualTo(3);
+		assertThat(spec.path("serviceName").asText()).isEqualTo("group-app-test");
+		assertThat(spec.path("selector").path("matchLabels").path("spring-app-id").asText()).isEqualTo("group-app-test");
+		assertThat(spec.path("template").path("metadata").path("labels").path("role").asText()).isEqualTo("spring-app");
+		Map<String, String> indexFields = new HashMap<>();
+		for (JsonNode env : spec.path("template").path("spec").path("containers").path(0).path("env")) {
+			if (env.has("valueFrom")) {
+				indexFields.put(env.path("name").asText(), env.path("valueFrom").path("fieldRef").path("fieldPath").asText());
+			}
+		}
+		assertThat(indexFields)
+				.containsEntry("INSTANCE_INDEX", "metadata.labels['apps.kubernetes.io/pod-index']")
+				.containsEntry("SPRING_APPLICATION_INDEX", "metadata.labels['apps.kubernetes.io/pod-index']");
+	}
+
+	@Test
+	public void buildDeploymentWithRollingUpdate() throws Exception {
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setMinReadySeconds(10);
+		deployer = new KubernetesAppDeployer(properties, null);
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.rollingUpdate.maxSurge", "2");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		JsonNode deployment = deployer.buildDeployment("app-test", request, deployer.resolveSettings(request), 8080, 2);
+
+		assertThat(deployment.path("kind").asText()).isEqualTo("Deployment");
+		JsonNode spec = deployment.path("spec");
+		assertThat(spec.path("replicas").asInt()).isEqualTo(2);
+		assertThat(spec.path("selector").path("matchLabels").path("spring-app-id").asText()).isEqualTo("app-test");
+		assertThat(spec.path("minReadySeconds").asInt()).isEqualTo(10);
+		JsonNode rollingUpdate = spec.path("strategy").path("rollingUpdate");
+		assertThat(rollingUpdate.path("maxSurge").isInt()).isTrue();
+		assertThat(rollingUpdate.path("maxSurge").asInt()).isEqualTo(2);
+		assertThat(rollingUpdate.path("maxUnavailable").asInt()).isEqualTo(0);
+		assertThat(spec.path("template").path("spec").path("containers").path(0).path("name").asText())
+				.isEqualTo("app-test");
+	}
+
+	@Test
+	public void copyIndexedInstanceForScaleOut() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				new HashMap<>());
+		Map<String, String> idMap = deployer.createIdMap("app-test", request, 0);
+		ReplicationController template = new ReplicationControllerBuilder()
+				.withNewMetadata()
+					.withName("app-test-0")
+					.withLabels(idMap)
+				.endMetadata()
+				.withNewSpec()
+					.withReplicas(1)
+					.withSelector(idMap)
+					.withNewTemplate()
+						.withNewMetadata()
+							.withLabels(idMap)
+						.endMetadata()
+						.withSpec(deployer.createPodSpec("app-test", request, 8080, 0, false))
+					.endTemplate()
+				.endSpec()
+				.build();
+
+		ReplicationController copy = deployer.copyIndexedInstance(template, "app-test", 3);
+
+		assertThat(copy.getMetadata().getName()).isEqualTo("app-test-3");
+		assertThat(copy.getSpec().getSelector()).containsEntry("spring-deployment-id", "app-test-3")
+				.containsEntry("spring-app-id", "app-test");
+		assertThat(copy.getSpec().getTemplate().getMetadata().getLabels())
+				.containsEntry("spring-deployment-id", "app-test-3");
+		Container container = copy.getSpec().getTemplate().getSpec().getContainers().get(0);
+		assertThat(container.getName()).isEqualTo("app-test-3");
+		assertThat(container.getEnv()).contains(new EnvVar("INSTANCE_INDEX", "3", null),
+				new EnvVar("SPRING_APPLICATION_INDEX", "3", null));
+		assertThat(template.getSpec().getTemplate().getSpec().getContainers().get(0).getName()).isEqualTo("app-test-0");
+	}
+
+	@Test
+	public void buildAutoscalerFromDeploymentProperties() throws Exception {
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), null);
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.min", "2");
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.max", "10");
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.targetCpuUtilization", "75");
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.metrics", "queue_depth=100, lag=5");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+		OwnerReference controller = new OwnerReferenceBuilder()
+				.withApiVersion("apps/v1")
+				.withKind("Deployment")
+				.withName("app-test")
+				.withUid("1234")
+				.build();
+
+		JsonNode autoscaler = deployer.buildAutoscaler("app-test", request, deployer.resolveSettings(request),
+				controller);
+
+		assertThat(autoscaler.path("metadata").path("ownerReferences").path(0).path("uid").asText()).isEqualTo("1234");
+		JsonNode spec = autoscaler.path("spec");
+		assertThat(spec.path("scaleTargetRef").path("kind").asText()).isEqualTo("Deployment");
+		assertThat(spec.path("minReplicas").asInt()).isEqualTo(2);
+		assertThat(spec.path("maxReplicas").asInt()).isEqualTo(10);
+		JsonNode metrics = spec.path("metrics");
+		assertThat(metrics.size()).isEqualTo(3);
+		assertThat(metrics.path(0).path("resource").path("target").path("averageUtilization").asInt()).isEqualTo(75);
+		assertThat(metrics.path(1).path("pods").path("metric").path("name").asText()).isEqualTo("queue_depth");
+		assertThat(metrics.path(2).path("pods").path("target").path("averageValue").asText()).isEqualTo("5");
+	}
+
+	@Test
+	public void deployChecksExistenceWithStrongRead() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list());
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setExistsReadConsistency(ReadConsistency.cached);
+		deployer = new KubernetesAppDeployer(properties, api.client());
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				Collections.emptyMap());
+
+		deployer.exists("app-test");
+		deployer.deploy(request);
+
+		List<RecordedRequest> lists = api.getRequests("GET", "/api/v1/namespaces/test/replicationcontrollers");
+		assertThat(lists).extracting(listRequest -> listRequest.url.queryParameter("resourceVersion"))
+				.containsExactly("0", null);
+	}
+
+	@Test
+	public void deployResolvesSettingsOnce() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list());
+		AtomicInteger resolutions = new AtomicInteger();
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client()) {
+
+			@Override
+			protected ResolvedKubernetesDeploymentSettings resolveSettings(AppDeploymentRequest request) {
+				resolutions.incrementAndGet();
+				return super.resolveSettings(request);
+			}
+		};
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.max", "4");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		deployer.deploy(request);
+
+		assertThat(resolutions.get()).isEqualTo(1);
+		assertThat(api.getRequests("POST", "/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers")).hasSize(1);
+	}
+
+	@Test
+	public void deployRemovesControllerWhenServiceCannotBeCreated() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("POST", "/api/v1/namespaces/test/services", 409, "{\"kind\":\"Status\",\"code\":409}")
+				.on("DELETE", "/api/v1/namespaces/test/replicationcontrollers/app-test", 200, "{}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				Collections.emptyMap());
+
+		try {
+			deployer.deploy(request);
+			fail("Expected deploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(409);
+		}
+
+		assertThat(api.getRequests("POST", "/api/v1/namespaces/test/replicationcontrollers")).hasSize(1);
+		// the service that is in the way was not created by the deploy, so only the controller is removed
+		assertThat(deletedPaths(api)).containsExactly("/api/v1/namespaces/test/replicationcontrollers/app-test");
+	}
+
+	@Test
+	public void deployRemovesStatefulSetWhenServiceCannotBeCreated() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("GET", "/apis/apps/v1/namespaces/test/statefulsets", 200, list())
+				.on("POST", "/api/v1/namespaces/test/services", 409, "{\"kind\":\"Status\",\"code\":409}")
+				.on("DELETE", "/apis/apps/v1/namespaces/test/statefulsets/app-test", 200, "{}");
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setStatefulSetForIndexedApps(true);
+		deployer = new KubernetesAppDeployer(properties, api.client());
+		Map<String, String> props = new HashMap<>();
+		props.put(AppDeployer.COUNT_PROPERTY_KEY, "2");
+		props.put(AppDeployer.INDEXED_PROPERTY_KEY, "true");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		try {
+			deployer.deploy(request);
+			fail("Expected deploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(409);
+		}
+
+		assertThat(api.getRequests("POST", "/apis/apps/v1/namespaces/test/statefulsets")).hasSize(1);
+		assertThat(api.getRequests("DELETE", "/apis/apps/v1/namespaces/test/statefulsets/app-test")).hasSize(1);
+	}
+
+	@Test
+	public void deployRejectsExternalServiceForStatefulSet() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("GET", "/apis/apps/v1/namespaces/test/statefulsets", 200, list());
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setStatefulSetForIndexedApps(true);
+		deployer = new KubernetesAppDeployer(properties, api.client());
+		Map<String, String> props = new HashMap<>();
+		props.put(AppDeployer.INDEXED_PROPERTY_KEY, "true");
+		props.put("spring.cloud.deployer.kubernetes.createLoadBalancer", "true");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		try {
+			deployer.deploy(request);
+			fail("Expected deploy to fail");
+		}
+		catch (IllegalArgumentException e) {
+			assertThat(e.getMessage()).contains("LoadBalancer or NodePort");
+		}
+
+		assertThat(api.getRequests()).extracting("method").doesNotContain("POST");
+	}
+
+	@Test
+	public void deployedDependentsBlockForegroundDeletionOfController() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list());
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.max", "4");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+
+		deployer.deploy(request);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		for (String path : Arrays.asList("/api/v1/namespaces/test/services",
+				"/apis/autoscaling/v2/namespaces/test/horizontalpodautoscalers")) {
+			List<RecordedRequest> creates = api.getRequests("POST", path);
+			assertThat(creates).hasSize(1);
+			JsonNode owner = objectMapper.readTree(creates.get(0).body).path("metadata").path("ownerReferences").path(0);
+			assertThat(owner.path("kind").asText()).isEqualTo("ReplicationController");
+			assertThat(owner.path("controller").asBoolean()).isTrue();
+			assertThat(owner.path("blockOwnerDeletion").asBoolean()).isTrue();
+		}
+	}
+
+	@Test
+	public void deployLeavesExistingControllerAloneWhenItCannotBeCreated() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list())
+				.on("POST", "/api/v1/namespaces/test/replicationcontrollers", 409,
+						"{\"kind\":\"Status\",\"code\":409}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				Collections.emptyMap());
+
+		try {
+			deployer.deploy(request);
+			fail("Expected deploy to fail");
+		}
+		catch (KubernetesClientException e) {
+			assertThat(e.getCode()).isEqualTo(409);
+		}
+
+		assertThat(api.getRequests()).extracting("method").doesNotContain("DELETE");
+	}
+
+	@Test
+	public void undeployWaitsForForegroundDeletionOfController() throws Exception {
+		FakeKubernetesApi api = new FakeKubernetesApi()
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers", 200, list(
+						json("{'metadata':{'name':'app-test','labels':{'spring-app-id':'app-test'}},"
+								+ "'spec':{'replicas':1}}")))
+				.on("GET", "/api/v1/namespaces/test/services", 200, list(
+						json("{'metadata':{'name':'app-test','labels':{'spring-app-id':'app-test'},'ownerReferences':"
+								+ "[{'apiVersion':'v1','kind':'ReplicationController','name':'app-test','uid':'1'}]},"
+								+ "'spec':{'type':'ClusterIP'}}")))
+				.on("DELETE", "/api/v1/namespaces/test/replicationcontrollers/app-test", 200, "{}")
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers/app-test", 200,
+						json("{'metadata':{'name':'app-test','deletionTimestamp':'2017-01-01T00:00:00Z'}}"))
+				.on("GET", "/api/v1/namespaces/test/replicationcontrollers/app-test", 404,
+						"{\"kind\":\"Status\",\"code\":404}");
+		deployer = new KubernetesAppDeployer(bindDeployerProperties(), api.client());
+
+		deployer.undeploy("app-test");
+
+		List<RecordedRequest> deletes = api.getRequests("DELETE", "/api/v1/namespaces/test/replicationcontrollers/app-test");
+		assertThat(deletes).hasSize(1);
+		assertThat(deletes.get(0).body).contains("\"propagationPolicy\":\"Foreground\"");
+		assertThat(api.getRequests("GET", "/api/v1/namespaces/test/replicationcontrollers/app-test")).hasSize(2);
+		assertThat(api.getRequests("DELETE", "/api/v1/namespaces/test/services/app-test")).isEmpty();
+	}
+
+	@Test
+	public void awaitLoadBalancerChecksServiceOnceWatched() throws Exception {
+		LoadBalancerAppDeployer deployer = new LoadBalancerAppDeployer(bindDeployerProperties());
+		deployer.service = loadBalancer(true);
+
+		CompletableFuture<Void> ready = deployer.awaitLoadBalancer("app-test", loadBalancer(false));
+
+		assertThat(ready.isDone()).isTrue();
+		assertThat(deployer.watchers).hasSize(1);
+		assertThat(deployer.closedWatches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void awaitLoadBalancerCompletesWhenWatchSeesIngress() throws Exception {
+		LoadBalancerAppDeployer deployer = new LoadBalancerAppDeployer(bindDeployerProperties());
+		deployer.service = loadBalancer(false);
+
+		CompletableFuture<Void> ready = deployer.awaitLoadBalancer("app-test", loadBalancer(false));
+		assertThat(ready.isDone()).isFalse();
+		deployer.watchers.get(0).eventReceived(Watcher.Action.MODIFIED, loadBalancer(true));
+
+		assertThat(ready.isDone()).isTrue();
+		assertThat(deployer.closedWatches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void awaitLoadBalancerTimesOut() throws Exception {
+		KubernetesDeployerProperties properties = bindDeployerProperties();
+		properties.setMinutesToWaitForLoadBalancer(0);
+		LoadBalancerAppDeployer deployer = new LoadBalancerAppDeployer(properties);
+		deployer.service = loadBalancer(false);
+
+		CompletableFuture<Void> ready = deployer.awaitLoadBalancer("app-test", loadBalancer(false));
+
+		ready.get(5, TimeUnit.SECONDS);
+		assertThat(deployer.closedWatches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void awaitLoadBalancerPollsOnceWatchFails() throws Exception {
+		LoadBalancerAppDeployer deployer = new LoadBalancerAppDeployer(bindDeployerProperties());
+		deployer.service = loadBalancer(false);
+
+		CompletableFuture<Void> ready = deployer.awaitLoadBalancer("app-test", loadBalancer(false));
+		deployer.watchers.get(0).onClose(new KubernetesClientException("connection reset"));
+		assertThat(ready.isDone()).isFalse();
+
+		deployer.service = loadBalancer(true);
+		ready.get(5, TimeUnit.SECONDS);
+		assertThat(deployer.gets.get()).isGreaterThan(1);
+	}
+
+	private long timeDeploy(KubernetesAppDeployer deployer, int count) {
+		Map<String, String> props = new HashMap<>();
+		props.put(AppDeployer.COUNT_PROPERTY_KEY, String.valueOf(count));
+		props.put(AppDeployer.INDEXED_PROPERTY_KEY, "true");
+		AppDeploymentRequest request = new AppDeploymentRequest(new AppDefinition("app-test", null), getResource(),
+				props);
+		long start = System.currentTimeMillis();
+		deployer.deploy(request);
+		return System.currentTimeMillis() - start;
+	}
+
+	private static List<String> deletedPaths(FakeKubernetesApi api) {
+		return api.getRequests().stream()
+				.filter(recorded -> recorded.method.equals("DELETE"))
+				.map(recorded -> recorded.url.encodedPath())
+				.collect(Collectors.toList());
+	}
+
+	private static String autoscaler(String appId) {
+		return json("{'metadata':{'name':'" + appId + "','labels':{'spring-app-id':'" + appId + "'}},"
+				+ "'spec':{'minReplicas':1,'maxReplicas':5},'status':{'currentReplicas':3,'desiredReplicas':4}}");
+	}
+
 	private Resource getResource() {
 		return new DockerResource("springcloud/spring-cloud-deployer-spi-test-app:latest");
 	}
 
+	private static Service loadBalancer(boolean ready) {
+		Service service = new ServiceBuilder()
+				.withNewMetadata()
+					.withName("app-test")
+				.endMetadata()
+				.withNewSpec()
+					.withType("LoadBalancer")
+				.endSpec()
+				.withNewStatus()
+					.withNewLoadBalancer()
+					.endLoadBalancer()
+				.endStatus()
+				.build();
+		service.getStatus().getLoadBalancer().setIngress(ready
+				? Collections.singletonList(new LoadBalancerIngressBuilder().withIp("10.0.0.1").build())
+				: new ArrayList<>());
+		return service;
+	}
+
+	/**
+	 * Deployer that simulates the latency of the API server when creating the instances of an indexed app.
+	 */
+	private static class LatencyInjectingAppDeployer extends KubernetesAppDeployer {
+
+		private final Set<Integer> createdIndexes = Collections.synchronizedSet(new HashSet<>());
+
+		private final int failingIndex;
+
+		private final List<String> removed = new CopyOnWriteArrayList<>();
+
+		LatencyInjectingAppDeployer(KubernetesDeployerProperties properties, int failingIndex) {
+			super(properties, null);
+			this.failingIndex = failingIndex;
+		}
+
+		@Override
+		protected boolean exists(String appId, ReadConsistency consistency) {
+			return false;
+		}
+
+		@Override
+		protected void createIndexedInstance(String appId, AppDeploymentRequest request,
+		                                     ResolvedKubernetesDeploymentSettings settings, int index, int externalPort,
+		                                     CreatedResources created) {
+			try {
+				// one service and one replication controller create call
+				Thread.sleep(2 * 50L);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			if (index == failingIndex) {
+				throw new IllegalStateException("Failed to create instance " + index);
+			}
+			created.add(KubernetesApiOperations.CORE_API, "replicationcontrollers", appId + "-" + index);
+			createdIndexes.add(index);
+		}
+
+		@Override
+		protected void cleanupPartialDeployment(String appId, CreatedResources created) {
+			created.newestFirst().forEach(resource -> removed.add(resource.name));
+		}
+	}
+
+	/**
+	 * Deployer serving a canned service and handing out service watches that only record being closed.
+	 */
+	private static class LoadBalancerAppDeployer extends KubernetesAppDeployer {
+
+		private final List<Watcher<Service>> watchers = new CopyOnWriteArrayList<>();
+
+		private final AtomicInteger closedWatches = new AtomicInteger();
+
+		private final AtomicInteger gets = new AtomicInteger();
+
+		private volatile Service service;
+
+		LoadBalancerAppDeployer(KubernetesDeployerProperties properties) {
+			super(properties, null);
+		}
+
+		@Override
+		Watch watchService(String serviceName, Watcher<Service> watcher) {
+			watchers.add(watcher);
+			return closedWatches::incrementAndGet;
+		}
+
+		@Override
+		Service getService(String serviceName) {
+			gets.incrementAndGet();
+			return service;
+		}
+	}
+
 	private KubernetesDeployerProperties bindDeployerProperties() throws Exception {
 		YamlConfigurationFactory<KubernetesDeployerProperties> yamlConfigurationFactory = new YamlConfigurationFactory<>(
 				KubernetesDeployerProperties.class);
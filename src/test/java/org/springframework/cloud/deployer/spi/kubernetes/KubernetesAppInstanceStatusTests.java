@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+
+import org.springframework.cloud.deployer.spi.app.DeploymentState;
+
+/**
+ * Unit tests for {@link KubernetesAppInstanceStatus}.
+ */
+public class KubernetesAppInstanceStatusTests {
+
+	@Test
+	public void snapshotsPodAtConstruction() {
+		Pod pod = new PodBuilder()
+				.withNewMetadata().withName("app-test-0").endMetadata()
+				.withNewStatus()
+					.withPhase("Running")
+					.withPodIP("10.0.0.1")
+					.addNewContainerStatus().withReady(true).withRestartCount(0).endContainerStatus()
+				.endStatus()
+				.build();
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod,
+				new KubernetesDeployerProperties(), Collections.singletonMap("autoscaler_max_replicas", "3"));
+		pod.getStatus().setPhase("Failed");
+		pod.getStatus().setPodIP("10.0.0.2");
+
+		assertThat(status.getId()).isEqualTo("app-test-0");
+		assertThat(status.getState()).isEqualTo(DeploymentState.deployed);
+		assertThat(status.getAttributes())
+				.containsEntry("phase", "Running")
+				.containsEntry("pod_ip", "10.0.0.1")
+				.containsEntry("container_restart_count", "0")
+				.containsEntry("autoscaler_max_replicas", "3");
+		assertThat(status.getAttributes()).isSameAs(status.getAttributes());
+		try {
+			status.getAttributes().put("phase", "Unknown");
+			fail("Expected the attributes to be unmodifiable");
+		}
+		catch (UnsupportedOperationException e) {
+			assertThat(status.getAttributes()).containsEntry("phase", "Running");
+		}
+	}
+
+	@Test
+	public void startupLatenciesFromConditions() {
+		Pod pod = new PodBuilder()
+				.withNewMetadata().withName("app-test-0").withCreationTimestamp("2017-01-01T00:00:00Z").endMetadata()
+				.withNewStatus()
+					.withPhase("Running")
+					.addNewCondition().withType("PodScheduled").withStatus("True")
+						.withLastTransitionTime("2017-01-01T00:00:01Z").endCondition()
+					.addNewCondition().withType("Initialized").withStatus("True")
+						.withLastTransitionTime("2017-01-01T00:00:02Z").endCondition()
+					.addNewCondition().withType("Ready").withStatus("False")
+						.withLastTransitionTime("2017-01-01T00:00:02Z").endCondition()
+					.addNewContainerStatus().withReady(false).withRestartCount(0).withImage("app:1")
+						.withNewState().withNewRunning().withStartedAt("2017-01-01T00:00:12Z").endRunning().endState()
+					.endContainerStatus()
+				.endStatus()
+				.build();
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod,
+				new KubernetesDeployerProperties());
+
+		assertThat(status.getStartupLatencies()).containsOnlyKeys("scheduled", "initialized", "container_started");
+		assertThat(status.getAttributes())
+				.containsEntry("time_to_scheduled_ms", "1000")
+				.containsEntry("time_to_initialized_ms", "2000")
+				.containsEntry("time_to_container_started_ms", "12000")
+				.doesNotContainKey("time_to_ready_ms");
+		assertThat(status.getImage()).isEqualTo("app:1");
+	}
+
+	@Test
+	public void failsPendingPodWithInvalidImageRightAway() {
+		Pod pod = pendingPod(Instant.now().toString(), "InvalidImageName", "couldn't parse image reference");
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod,
+				new KubernetesDeployerProperties());
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.failed);
+		assertThat(status.getAttributes())
+				.containsEntry("pending_failure_reason", "InvalidImageName")
+				.containsEntry("pending_failure_message", "couldn't parse image reference");
+	}
+
+	@Test
+	public void failsPendingPodWithImagePullBackOffPastThreshold() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+
+		KubernetesAppInstanceStatus recent = new KubernetesAppInstanceStatus("app-test",
+				pendingPod(Instant.now().toString(), "ImagePullBackOff", null), properties);
+		KubernetesAppInstanceStatus stuck = new KubernetesAppInstanceStatus("app-test",
+				pendingPod("2017-01-01T00:00:00Z", "ImagePullBackOff", null), properties);
+
+		assertThat(recent.getState()).isEqualTo(DeploymentState.deploying);
+		assertThat(recent.getAttributes()).doesNotContainKey("pending_failure_reason");
+		assertThat(stuck.getState()).isEqualTo(DeploymentState.failed);
+		assertThat(stuck.getAttributes())
+				.containsEntry("pending_failure_reason", "ImagePullBackOff")
+				.doesNotContainKey("pending_failure_message");
+	}
+
+	@Test
+	public void timesWaitingContainerFromWhenReasonWasFirstSeen() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		LruCache<String, Instant> waitingSince = new LruCache<>(16);
+
+		KubernetesAppInstanceStatus firstSeen = new KubernetesAppInstanceStatus("app-test",
+				pendingPod("2017-01-01T00:00:00Z", "ErrImagePull", null), properties, null, waitingSince);
+		assertThat(firstSeen.getState()).isEqualTo(DeploymentState.deploying);
+
+		waitingSince.put("app-test-0/app", Instant.now().minusSeconds(properties.getPendingFailureThreshold()));
+		// the kubelet alternates between pulling and backing off, which doesn't restart the clock
+		KubernetesAppInstanceStatus stuck = new KubernetesAppInstanceStatus("app-test",
+				pendingPod("2017-01-01T00:00:00Z", "ImagePullBackOff", null), properties, null, waitingSince);
+		assertThat(stuck.getState()).isEqualTo(DeploymentState.failed);
+		assertThat(stuck.getAttributes()).containsEntry("pending_failure_reason", "ImagePullBackOff");
+
+		new KubernetesAppInstanceStatus("app-test", pendingPod("2017-01-01T00:00:00Z", "ContainerCreating", null),
+				properties, null, waitingSince);
+		assertThat(waitingSince.get("app-test-0/app")).isNull();
+	}
+
+	@Test
+	public void restartsWaitingClockOfPodRecreatedUnderSameName() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		LruCache<String, Instant> waitingSince = new LruCache<>(16);
+		Pod stuck = new PodBuilder(pendingPod("2017-01-01T00:00:00Z", "ImagePullBackOff", null))
+				.editMetadata().withUid("1").endMetadata()
+				.build();
+		new KubernetesAppInstanceStatus("app-test", stuck, properties, null, waitingSince);
+		waitingSince.put("1/app", Instant.now().minusSeconds(properties.getPendingFailureThreshold()));
+		assertThat(new KubernetesAppInstanceStatus("app-test", stuck, properties, null, waitingSince).getState())
+				.isEqualTo(DeploymentState.failed);
+
+		Pod recreated = new PodBuilder(pendingPod(Instant.now().toString(), "ImagePullBackOff", null))
+				.editMetadata().withUid("2").endMetadata()
+				.build();
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", recreated, properties, null,
+				waitingSince);
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.deploying);
+		assertThat(status.getAttributes()).doesNotContainKey("pending_failure_reason");
+	}
+
+	@Test
+	public void timesWaitingContainerFromInitializationWithoutTracking() {
+		Pod pod = new PodBuilder(pendingPod("2017-01-01T00:00:00Z", "ImagePullBackOff", null))
+				.editStatus()
+					.addNewCondition().withType("Initialized").withStatus("True")
+						.withLastTransitionTime(Instant.now().toString()).endCondition()
+				.endStatus()
+				.build();
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod,
+				new KubernetesDeployerProperties());
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.deploying);
+		assertThat(status.getAttributes()).doesNotContainKey("pending_failure_reason");
+	}
+
+	@Test
+	public void keepsPendingPodDeployingWhenThresholdNegative() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		properties.setPendingFailureThreshold(-1);
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test",
+				pendingPod("2017-01-01T00:00:00Z", "CreateContainerConfigError", "secret \"db\" not found"),
+				properties);
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.deploying);
+		assertThat(status.getAttributes()).doesNotContainKey("pending_failure_reason");
+	}
+
+	@Test
+	public void failsUnschedulablePodPastThreshold() {
+		Pod pod = new PodBuilder()
+				.withNewMetadata().withName("app-test-0").withCreationTimestamp("2017-01-01T00:00:00Z").endMetadata()
+				.withNewStatus()
+					.withPhase("Pending")
+					.addNewCondition().withType("PodScheduled").withStatus("False").withReason("Unschedulable")
+						.withMessage("0/3 nodes are available: 3 Insufficient memory.")
+						.withLastTransitionTime("2017-01-01T00:00:00Z").endCondition()
+				.endStatus()
+				.build();
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod,
+				new KubernetesDeployerProperties());
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.failed);
+		assertThat(status.getAttributes())
+				.containsEntry("pending_failure_reason", "Unschedulable")
+				.containsEntry("pending_failure_message", "0/3 nodes are available: 3 Insufficient memory.");
+	}
+
+	@Test
+	public void unknownWithoutPod() {
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", null,
+				new KubernetesDeployerProperties());
+
+		assertThat(status.getId()).isEqualTo("N/A");
+		assertThat(status.getState()).isEqualTo(DeploymentState.unknown);
+		assertThat(status.getAttributes()).isEmpty();
+	}
+
+	private static Pod pendingPod(String creationTimestamp, String waitingReason, String waitingMessage) {
+		return new PodBuilder()
+				.withNewMetadata().withName("app-test-0").withCreationTimestamp(creationTimestamp).endMetadata()
+				.withNewStatus()
+					.withPhase("Pending")
+					.addNewContainerStatus().withName("app").withReady(false).withRestartCount(0)
+						.withNewState().withNewWaiting().withReason(waitingReason).withMessage(waitingMessage)
+							.endWaiting().endState()
+					.endContainerStatus()
+				.endStatus()
+				.build();
+	}
+}
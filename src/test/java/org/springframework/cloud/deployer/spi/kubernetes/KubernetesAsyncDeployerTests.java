@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesTestFixtures.await;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesTestFixtures.pod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.cloud.deployer.resource.docker.DockerResource;
+import org.springframework.cloud.deployer.spi.app.AppDeployer;
+import org.springframework.cloud.deployer.spi.app.AppStatus;
+import org.springframework.cloud.deployer.spi.app.DeploymentState;
+import org.springframework.cloud.deployer.spi.core.AppDefinition;
+import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
+import org.springframework.core.io.Resource;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+
+/**
+ * Unit tests for {@link KubernetesAsyncDeployer}, driving the pod watch by hand.
+ */
+public class KubernetesAsyncDeployerTests {
+
+	private static final String APP_ID = "app-test";
+
+	private StubAsyncDeployer asyncDeployer;
+
+	@Before
+	public void setUp() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		KubernetesAppDeployer appDeployer = new KubernetesAppDeployer(properties, null) {
+
+			@Override
+			public String deploy(AppDeploymentRequest request) {
+				return APP_ID;
+			}
+		};
+		asyncDeployer = new StubAsyncDeployer(properties, appDeployer);
+	}
+
+	@After
+	public void tearDown() {
+		asyncDeployer.close();
+	}
+
+	@Test
+	public void deployWaitsForRequestedInstanceCount() throws Exception {
+		CompletableFuture<AppStatus> future = asyncDeployer.deploy(request(3));
+		await(() -> asyncDeployer.watchers.size() == 1);
+		Watcher<Pod> watcher = asyncDeployer.watchers.get(0);
+
+		watcher.eventReceived(Watcher.Action.ADDED, readyPod("app-test-0"));
+		watcher.eventReceived(Watcher.Action.ADDED, readyPod("app-test-1"));
+		assertThat(future.isDone()).isFalse();
+
+		watcher.eventReceived(Watcher.Action.ADDED, readyPod("app-test-2"));
+		AppStatus status = future.get(5, TimeUnit.SECONDS);
+		assertThat(status.getState()).isEqualTo(DeploymentState.deployed);
+		assertThat(status.getInstances()).hasSize(3);
+		assertThat(asyncDeployer.closedWatches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void deployDefaultsToOneInstance() throws Exception {
+		asyncDeployer.pods = Collections.singletonList(readyPod("app-test-0"));
+
+		AppStatus status = asyncDeployer.deploy(request(null)).get(5, TimeUnit.SECONDS);
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.deployed);
+		assertThat(asyncDeployer.watchers).isEmpty();
+	}
+
+	@Test
+	public void deployCompletesWhenAppFails() throws Exception {
+		CompletableFuture<AppStatus> future = asyncDeployer.deploy(request(2));
+		await(() -> asyncDeployer.watchers.size() == 1);
+
+		Pod pod = readyPod("app-test-0");
+		pod.getStatus().setPhase("Failed");
+		asyncDeployer.watchers.get(0).eventReceived(Watcher.Action.MODIFIED, pod);
+
+		assertThat(future.get(5, TimeUnit.SECONDS).getState()).isEqualTo(DeploymentState.failed);
+	}
+
+	@Test
+	public void deployListsAndWatchesAgainWhenWatchCloses() throws Exception {
+		CompletableFuture<AppStatus> future = asyncDeployer.deploy(request(2));
+		await(() -> asyncDeployer.watchers.size() == 1);
+		Watcher<Pod> watcher = asyncDeployer.watchers.get(0);
+		watcher.eventReceived(Watcher.Action.ADDED, readyPod("app-test-0"));
+
+		asyncDeployer.pods = Collections.singletonList(readyPod("app-test-0"));
+		watcher.onClose(new KubernetesClientException("too old resource version", 410, null));
+		await(() -> asyncDeployer.watchers.size() == 2);
+		assertThat(asyncDeployer.lists.get()).isEqualTo(2);
+		assertThat(asyncDeployer.watchedVersions).containsExactly("1", "2");
+		assertThat(future.isDone()).isFalse();
+
+		asyncDeployer.watchers.get(1).eventReceived(Watcher.Action.ADDED, readyPod("app-test-1"));
+		assertThat(future.get(5, TimeUnit.SECONDS).getInstances()).hasSize(2);
+	}
+
+	private static AppDeploymentRequest request(Integer count) {
+		AppDefinition definition = new AppDefinition("app-test", Collections.emptyMap());
+		Resource resource = new DockerResource("springcloud/spring-cloud-deployer-spi-test-app:latest");
+		return new AppDeploymentRequest(definition, resource, count != null
+				? Collections.singletonMap(AppDeployer.COUNT_PROPERTY_KEY, String.valueOf(count))
+				: Collections.emptyMap());
+	}
+
+	private static Pod readyPod(String name) {
+		return new PodBuilder(pod(name, APP_ID))
+				.editStatus()
+					.withPhase("Running")
+					.addNewContainerStatus()
+						.withName(APP_ID)
+						.withReady(true)
+						.withRestartCount(0)
+					.endContainerStatus()
+				.endStatus()
+				.build();
+	}
+
+	/**
+	 * Async deployer listing canned pods and handing out watches that only record being closed.
+	 */
+	private static class StubAsyncDeployer extends KubernetesAsyncDeployer {
+
+		final AtomicInteger lists = new AtomicInteger();
+
+		final AtomicInteger closedWatches = new AtomicInteger();
+
+		final List<String> watchedVersions = new CopyOnWriteArrayList<>();
+
+		final List<Watcher<Pod>> watchers = new CopyOnWriteArrayList<>();
+
+		volatile List<Pod> pods = Collections.emptyList();
+
+		StubAsyncDeployer(KubernetesDeployerProperties properties, KubernetesAppDeployer appDeployer) {
+			super(properties, null, appDeployer, null);
+		}
+
+		@Override
+		PodList listPods(String appId) {
+			return new PodListBuilder()
+					.withNewMetadata()
+						.withResourceVersion(String.valueOf(lists.incrementAndGet()))
+					.endMetadata()
+					.withItems(new ArrayList<>(pods))
+					.build();
+		}
+
+		@Override
+		Watch watchPods(String appId, String resourceVersion, Watcher<Pod> watcher) {
+			watchedVersions.add(resourceVersion);
+			watchers.add(watcher);
+			return closedWatches::incrementAndGet;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link KubernetesAutoConfiguration}.
+ */
+public class KubernetesAutoConfigurationTests {
+
+	@Test
+	public void configuresHttpTransport() {
+		KubernetesDeployerProperties.Http http = new KubernetesDeployerProperties.Http();
+		http.setMaxRequestsPerHost(48);
+		http.setReadTimeout(30000);
+		http.setHttp2(false);
+
+		OkHttpClient httpClient = KubernetesAutoConfiguration.configureHttpClient(new OkHttpClient(), http);
+
+		assertThat(httpClient.dispatcher().getMaxRequests()).isEqualTo(64);
+		assertThat(httpClient.dispatcher().getMaxRequestsPerHost()).isEqualTo(48);
+		assertThat(httpClient.readTimeoutMillis()).isEqualTo(30000);
+		assertThat(httpClient.connectTimeoutMillis()).isEqualTo(new OkHttpClient().connectTimeoutMillis());
+		assertThat(httpClient.protocols()).containsExactly(Protocol.HTTP_1_1);
+	}
+
+	@Test
+	public void queuesRequestsOverBurstUntilTheyAreServed() throws Exception {
+		KubernetesDeployerProperties.Http http = new KubernetesDeployerProperties.Http();
+		http.setQps(100);
+		http.setBurst(2);
+		// the queue wait is not bound to the read timeout
+		http.setReadTimeout(10);
+		OkHttpClient httpClient = KubernetesAutoConfiguration.configureHttpClient(new OkHttpClient(), http)
+				.newBuilder()
+				.addInterceptor(chain -> new Response.Builder()
+						.request(chain.request())
+						.protocol(Protocol.HTTP_1_1)
+						.code(200)
+						.message("OK")
+						.body(ResponseBody.create(MediaType.parse("application/json"), "{}"))
+						.build())
+				.build();
+		Request request = new Request.Builder().url("http://kubernetes.test/api/v1/namespaces/test/pods").build();
+
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+		try {
+			List<Future<Integer>> responses = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				responses.add(executor.submit(() -> {
+					try (Response response = httpClient.newCall(request).execute()) {
+						return response.code();
+					}
+				}));
+			}
+			for (Future<Integer> response : responses) {
+				assertThat(response.get()).isEqualTo(200);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
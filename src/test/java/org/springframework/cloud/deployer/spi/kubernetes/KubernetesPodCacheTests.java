@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesTestFixtures.await;
+import static org.springframework.cloud.deployer.spi.kubernetes.KubernetesTestFixtures.pod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.PodListBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+
+/**
+ * Unit tests for {@link KubernetesPodCache}.
+ */
+public class KubernetesPodCacheTests {
+
+	private KubernetesPodCache podCache;
+
+	private StubPodCache stubPodCache;
+
+	@Before
+	public void setUp() {
+		podCache = new KubernetesPodCache(null, new KubernetesDeployerProperties());
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		properties.setPodCacheResyncPeriod(0);
+		stubPodCache = new StubPodCache(properties);
+	}
+
+	@After
+	public void tearDown() {
+		stubPodCache.close();
+	}
+
+	@Test
+	public void notSyncedBeforeStart() {
+		assertThat(podCache.isSynced()).isFalse();
+		assertThat(podCache.getLastSyncTime()).isEqualTo(0L);
+		assertThat(podCache.getStaleness()).isGreaterThanOrEqualTo(0L);
+	}
+
+	@Test
+	public void indexesPodsByAppId() {
+		podCache.apply(Watcher.Action.ADDED, pod("app1-abcde", "app1"));
+		podCache.apply(Watcher.Action.ADDED, pod("app1-fghij", "app1"));
+		podCache.apply(Watcher.Action.ADDED, pod("app2-abcde", "app2"));
+
+		assertThat(podCache.getPods("app1")).extracting("metadata.name").containsOnly("app1-abcde", "app1-fghij");
+		assertThat(podCache.getPods("app2")).extracting("metadata.name").containsOnly("app2-abcde");
+		assertThat(podCache.getPods("app3")).isEmpty();
+	}
+
+	@Test
+	public void replacesModifiedPods() {
+		podCache.apply(Watcher.Action.ADDED, pod("app1-abcde", "app1"));
+		Pod modified = pod("app1-abcde", "app1");
+		modified.getStatus().setPhase("Running");
+		podCache.apply(Watcher.Action.MODIFIED, modified);
+
+		assertThat(podCache.getPods("app1")).containsExactly(modified);
+	}
+
+	@Test
+	public void removesDeletedPods() {
+		podCache.apply(Watcher.Action.ADDED, pod("app1-abcde", "app1"));
+		podCache.apply(Watcher.Action.ADDED, pod("app1-fghij", "app1"));
+		podCache.apply(Watcher.Action.DELETED, pod("app1-abcde", "app1"));
+		assertThat(podCache.getPods("app1")).extracting("metadata.name").containsOnly("app1-fghij");
+
+		podCache.apply(Watcher.Action.DELETED, pod("app1-fghij", "app1"));
+		assertThat(podCache.getPods("app1")).isEmpty();
+	}
+
+	@Test
+	public void ignoresPodsWithoutAppId() {
+		podCache.apply(Watcher.Action.ADDED, new PodBuilder().withNewMetadata().withName("other").endMetadata().build());
+		assertThat(podCache.getPods("other")).isEmpty();
+	}
+
+	@Test
+	public void startListsThenWatchesFromListVersion() {
+		stubPodCache.pods = Arrays.asList(pod("app1-abcde", "app1"), pod("app2-abcde", "app2"));
+
+		stubPodCache.start();
+
+		assertThat(stubPodCache.isSynced()).isTrue();
+		assertThat(stubPodCache.getLastSyncTime()).isGreaterThan(0L);
+		assertThat(stubPodCache.getStaleness()).isEqualTo(0L);
+		assertThat(stubPodCache.getPods("app1")).extracting("metadata.name").containsOnly("app1-abcde");
+		assertThat(stubPodCache.watchedVersions).containsExactly("1");
+	}
+
+	@Test
+	public void resyncReplacesIndex() {
+		stubPodCache.pods = Arrays.asList(pod("app1-abcde", "app1"), pod("app2-abcde", "app2"));
+		stubPodCache.start();
+
+		stubPodCache.pods = Arrays.asList(pod("app2-fghij", "app2"), pod("app3-abcde", "app3"));
+		stubPodCache.resync();
+
+		assertThat(stubPodCache.isSynced()).isTrue();
+		assertThat(stubPodCache.getPods("app1")).isEmpty();
+		assertThat(stubPodCache.getPods("app2")).extracting("metadata.name").containsOnly("app2-fghij");
+		assertThat(stubPodCache.getPods("app3")).extracting("metadata.name").containsOnly("app3-abcde");
+		assertThat(stubPodCache.watchedVersions).containsExactly("1", "2");
+		assertThat(stubPodCache.closedWatches.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void ignoresEventsOfReplacedWatch() {
+		stubPodCache.start();
+		Watcher<Pod> replaced = stubPodCache.watchers.get(0);
+		stubPodCache.resync();
+		Watcher<Pod> current = stubPodCache.watchers.get(1);
+
+		replaced.eventReceived(Watcher.Action.ADDED, pod("app1-abcde", "app1"));
+		replaced.onClose(new KubernetesClientException("closed"));
+		current.eventReceived(Watcher.Action.ADDED, pod("app2-abcde", "app2"));
+
+		assertThat(stubPodCache.getPods("app1")).isEmpty();
+		assertThat(stubPodCache.getPods("app2")).extracting("metadata.name").containsOnly("app2-abcde");
+		assertThat(stubPodCache.isSynced()).isTrue();
+		assertThat(stubPodCache.lists.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void relistsAndWatchesAgainWhenWatchCloses() throws Exception {
+		stubPodCache.pods = Arrays.asList(pod("app1-abcde", "app1"));
+		stubPodCache.start();
+		stubPodCache.pods = Arrays.asList(pod("app1-fghij", "app1"));
+
+		stubPodCache.watchers.get(0).onClose(new KubernetesClientException("too old resource version"));
+
+		await(() -> stubPodCache.isSynced() && stubPodCache.watchers.size() == 2);
+		assertThat(stubPodCache.lists.get()).isEqualTo(2);
+		assertThat(stubPodCache.getPods("app1")).extracting("metadata.name").containsOnly("app1-fghij");
+		assertThat(stubPodCache.watchedVersions).containsExactly("1", "2");
+	}
+
+	@Test
+	public void relistsWhenWatchReportsError() throws Exception {
+		stubPodCache.start();
+
+		stubPodCache.watchers.get(0).eventReceived(Watcher.Action.ERROR, null);
+
+		await(() -> stubPodCache.isSynced() && stubPodCache.watchers.size() == 2);
+		assertThat(stubPodCache.lists.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void staleWhileListFails() throws Exception {
+		stubPodCache.start();
+		long lastSyncTime = stubPodCache.getLastSyncTime();
+		stubPodCache.listFailure = new KubernetesClientException("connection refused");
+
+		stubPodCache.watchers.get(0).onClose(new KubernetesClientException("closed"));
+		await(() -> stubPodCache.lists.get() == 2);
+		Thread.sleep(50);
+
+		assertThat(stubPodCache.isSynced()).isFalse();
+		assertThat(stubPodCache.getStaleness()).isGreaterThanOrEqualTo(50L);
+		assertThat(stubPodCache.getLastSyncTime()).isEqualTo(lastSyncTime);
+		assertThat(stubPodCache.watchers).hasSize(1);
+	}
+
+	@Test
+	public void notSyncedAfterClose() {
+		stubPodCache.pods = Arrays.asList(pod("app1-abcde", "app1"));
+		stubPodCache.start();
+
+		stubPodCache.close();
+		stubPodCache.watchers.get(0).onClose(null);
+
+		assertThat(stubPodCache.isSynced()).isFalse();
+		assertThat(stubPodCache.getPods("app1")).isEmpty();
+		assertThat(stubPodCache.lists.get()).isEqualTo(1);
+	}
+
+	/**
+	 * Pod cache serving its list from a field and recording its watches instead of talking to an API server.
+	 * Each list has the number of the list as its resource version.
+	 */
+	static class StubPodCache extends KubernetesPodCache {
+
+		final AtomicInteger lists = new AtomicInteger();
+
+		final AtomicInteger closedWatches = new AtomicInteger();
+
+		final List<String> watchedVersions = new CopyOnWriteArrayList<>();
+
+		final List<Watcher<Pod>> watchers = new CopyOnWriteArrayList<>();
+
+		volatile List<Pod> pods = new ArrayList<>();
+
+		volatile RuntimeException listFailure;
+
+		StubPodCache(KubernetesDeployerProperties properties) {
+			super(null, properties);
+		}
+
+		@Override
+		PodList listPods() {
+			int list = lists.incrementAndGet();
+			if (listFailure != null) {
+				throw listFailure;
+			}
+			return new PodListBuilder()
+					.withNewMetadata().withResourceVersion(String.valueOf(list)).endMetadata()
+					.withItems(new ArrayList<>(pods))
+					.build();
+		}
+
+		@Override
+		Watch watchPods(String resourceVersion, Watcher<Pod> watcher) {
+			watchedVersions.add(resourceVersion);
+			watchers.add(watcher);
+			return closedWatches::incrementAndGet;
+		}
+	}
+}
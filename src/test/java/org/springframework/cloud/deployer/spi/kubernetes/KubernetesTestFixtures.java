@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.function.BooleanSupplier;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+
+/**
+ * Model objects shared by the unit tests.
+ */
+final class KubernetesTestFixtures {
+
+	private KubernetesTestFixtures() {
+	}
+
+	/**
+	 * @return a pending pod of the given app, labelled the way the deployer labels the pods of apps
+	 */
+	static Pod pod(String name, String appId) {
+		return new PodBuilder()
+				.withNewMetadata()
+					.withName(name)
+					.addToLabels(AbstractKubernetesDeployer.SPRING_APP_KEY, appId)
+					.addToLabels(AbstractKubernetesDeployer.SPRING_MARKER_KEY, AbstractKubernetesDeployer.SPRING_MARKER_VALUE)
+				.endMetadata()
+				.withNewStatus()
+					.withPhase("Pending")
+				.endStatus()
+				.build();
+	}
+
+	/**
+	 * Wait for a condition that is met asynchronously, failing if it is not met within five seconds.
+	 */
+	static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertThat(System.currentTimeMillis()).as("time waited for condition").isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LruCache}.
+ */
+public class LruCacheTests {
+
+	@Test
+	public void evictsLeastRecentlyUsedEntry() {
+		LruCache<String, String> cache = new LruCache<>(2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a");
+		cache.put("c", "3");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get("a")).isEqualTo("1");
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("c")).isEqualTo("3");
+	}
+
+	@Test
+	public void computesAbsentValuesOnce() {
+		LruCache<String, String> cache = new LruCache<>(2);
+		AtomicInteger computations = new AtomicInteger();
+
+		assertThat(cache.computeIfAbsent("a", key -> key + computations.incrementAndGet())).isEqualTo("a1");
+		assertThat(cache.computeIfAbsent("a", key -> key + computations.incrementAndGet())).isEqualTo("a1");
+		assertThat(computations.get()).isEqualTo(1);
+	}
+}
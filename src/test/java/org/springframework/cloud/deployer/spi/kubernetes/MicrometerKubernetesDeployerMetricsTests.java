@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MicrometerKubernetesDeployerMetrics}.
+ */
+public class MicrometerKubernetesDeployerMetricsTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final MicrometerKubernetesDeployerMetrics metrics = new MicrometerKubernetesDeployerMetrics(registry);
+
+	@Test
+	public void attributesApiRequestsToOutermostOperation() {
+		String appId = metrics.time("deploy", () -> {
+			metrics.apiRequest("GET", "200", 1000);
+			metrics.time("createPodSpec", () -> metrics.apiRequest("GET", "404", 1000));
+			metrics.apiRequest("POST", "201", 1000);
+			return "app";
+		});
+
+		assertThat(appId).isEqualTo("app");
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.OPERATIONS)
+				.tags("operation", "deploy", "exception", "none").timer().count()).isEqualTo(1);
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.OPERATIONS)
+				.tags("operation", "createPodSpec").timer().count()).isEqualTo(1);
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.API_REQUESTS)
+				.tags("operation", "deploy", "method", "GET").timers()).hasSize(2);
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.API_REQUESTS_PER_OPERATION)
+				.tags("operation", "deploy").summary().totalAmount()).isEqualTo(3);
+	}
+
+	@Test
+	public void recordsStartupOfEachPodOnce() {
+		Map<String, Long> latencies = new LinkedHashMap<>();
+		latencies.put("scheduled", 100L);
+		latencies.put("ready", 20000L);
+
+		metrics.podStarted("app", "app-abcde", "1", "app:1", latencies);
+		metrics.podStarted("app", "app-abcde", "1", "app:1", latencies);
+
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.POD_STARTUP)
+				.tags("app", "app", "image", "app:1", "step", "ready").timer().count()).isEqualTo(1);
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.POD_STARTUP)
+				.tags("step", "scheduled").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void recordsStartupOfPodRecreatedUnderSameName() {
+		Map<String, Long> latencies = Collections.singletonMap("ready", 20000L);
+
+		metrics.podStarted("app", "app-0", "1", "app:1", latencies);
+		metrics.podStarted("app", "app-0", "1", "app:1", latencies);
+		metrics.podStarted("app", "app-0", "2", "app:1", latencies);
+
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.POD_STARTUP)
+				.tags("step", "ready").timer().count()).isEqualTo(2);
+	}
+
+	@Test
+	public void tagsFailedOperationsWithException() {
+		try {
+			metrics.time("undeploy", () -> {
+				throw new IllegalStateException("App 'app' is not deployed");
+			});
+			fail("IllegalStateException expected");
+		}
+		catch (IllegalStateException expected) {
+		}
+
+		assertThat(registry.get(MicrometerKubernetesDeployerMetrics.OPERATIONS)
+				.tags("operation", "undeploy", "exception", "IllegalStateException").timer().count()).isEqualTo(1);
+	}
+}
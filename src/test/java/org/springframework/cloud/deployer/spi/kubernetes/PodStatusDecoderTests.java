@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+
+import org.springframework.cloud.deployer.spi.app.DeploymentState;
+
+/**
+ * Unit tests for {@link PodStatusDecoder}.
+ */
+public class PodStatusDecoderTests {
+
+	private static final String POD_LIST = "{\"kind\":\"PodList\",\"apiVersion\":\"v1\","
+			+ "\"metadata\":{\"resourceVersion\":\"42\"},\"items\":["
+			+ "{\"metadata\":{\"name\":\"app-test-0\",\"namespace\":\"default\",\"uid\":\"1a2b\","
+			+ "\"creationTimestamp\":\"2017-01-01T00:00:00Z\","
+			+ "\"labels\":{\"spring-app-id\":\"app-test\"},\"annotations\":{\"note\":\"x\"}},"
+			+ "\"spec\":{\"containers\":[{\"name\":\"app-test\",\"image\":\"app:1\","
+			+ "\"env\":[{\"name\":\"JAVA_OPTS\",\"value\":\"-Xmx64m\"}]}]},"
+			+ "\"status\":{\"phase\":\"Running\",\"hostIP\":\"10.0.0.1\",\"podIP\":\"10.1.0.1\","
+			+ "\"startTime\":\"2017-01-01T00:00:00Z\",\"conditions\":[{\"type\":\"Ready\",\"status\":\"True\","
+			+ "\"lastTransitionTime\":\"2017-01-01T00:00:30Z\"}],"
+			+ "\"containerStatuses\":[{\"name\":\"app-test\",\"ready\":false,\"restartCount\":3,"
+			+ "\"state\":{\"waiting\":{\"reason\":\"CrashLoopBackOff\"}},"
+			+ "\"lastState\":{\"terminated\":{\"exitCode\":1,\"reason\":\"Error\"}}}]}},"
+			+ "{\"metadata\":{\"name\":\"app-test-1\"},\"status\":{\"phase\":\"Pending\"}}]}";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void decodesOnlyStatusRelevantFields() throws Exception {
+		List<Pod> pods = decode(POD_LIST);
+
+		assertThat(pods).hasSize(2);
+		Pod pod = pods.get(0);
+		assertThat(pod.getMetadata().getName()).isEqualTo("app-test-0");
+		assertThat(pod.getMetadata().getUid()).isEqualTo("1a2b");
+		assertThat(pod.getMetadata().getLabels()).containsEntry("spring-app-id", "app-test");
+		assertThat(pod.getMetadata().getAnnotations()).isNullOrEmpty();
+		assertThat(pod.getSpec()).isNull();
+		assertThat(pod.getStatus().getPodIP()).isEqualTo("10.1.0.1");
+		assertThat(pod.getStatus().getContainerStatuses()).hasSize(1);
+		assertThat(pod.getStatus().getConditions()).hasSize(1);
+		assertThat(pod.getMetadata().getCreationTimestamp()).isEqualTo("2017-01-01T00:00:00Z");
+		assertThat(pods.get(1).getStatus().getPhase()).isEqualTo("Pending");
+	}
+
+	@Test
+	public void statusMatchesFullyDecodedPods() throws Exception {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		List<Pod> decoded = decode(POD_LIST);
+		List<Pod> full = objectMapper.readValue(POD_LIST, PodList.class).getItems();
+
+		for (int i = 0; i < full.size(); i++) {
+			KubernetesAppInstanceStatus expected = new KubernetesAppInstanceStatus("app-test", full.get(i), properties);
+			KubernetesAppInstanceStatus actual = new KubernetesAppInstanceStatus("app-test", decoded.get(i), properties);
+			assertThat(actual.getId()).isEqualTo(expected.getId());
+			assertThat(actual.getState()).isEqualTo(expected.getState());
+			assertThat(actual.getAttributes()).isEqualTo(expected.getAttributes());
+		}
+	}
+
+	@Test
+	public void decodesUidToTellPodsRecreatedUnderSameNameApart() throws Exception {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		LruCache<String, Instant> waitingSince = new LruCache<>(16);
+		waitingSince.put("1/app", Instant.now().minusSeconds(properties.getPendingFailureThreshold()));
+		String recreated = "{'metadata':{'name':'app-test-0','uid':'2','creationTimestamp':'2017-01-01T00:00:00Z'},"
+				+ "'status':{'phase':'Pending','containerStatuses':[{'name':'app','ready':false,'restartCount':0,"
+				+ "'state':{'waiting':{'reason':'ImagePullBackOff'}}}]}}";
+		JsonParser parser = objectMapper.getFactory().createParser(FakeKubernetesApi.json(recreated));
+		parser.nextToken();
+		Pod pod = new PodStatusDecoder(objectMapper).readPod(parser);
+
+		KubernetesAppInstanceStatus status = new KubernetesAppInstanceStatus("app-test", pod, properties, null,
+				waitingSince);
+
+		assertThat(status.getState()).isEqualTo(DeploymentState.deploying);
+		assertThat(waitingSince.get("2/app")).isNotNull();
+	}
+
+	@Test
+	public void decodesEmptyList() throws Exception {
+		assertThat(decode("{\"kind\":\"PodList\",\"items\":null}")).isEmpty();
+	}
+
+	@Test
+	public void readsContinueToken() throws Exception {
+		List<Pod> pods = new ArrayList<>();
+		String continueToken = KubernetesApiOperations.readList(
+				objectMapper.getFactory().createParser("{\"metadata\":{\"continue\":\"abc\"},\"items\":[{}]}"),
+				new PodStatusDecoder(objectMapper)::readPod, pods::add);
+
+		assertThat(continueToken).isEqualTo("abc");
+		assertThat(pods).hasSize(1);
+	}
+
+	private List<Pod> decode(String json) throws Exception {
+		List<Pod> pods = new ArrayList<>();
+		String continueToken = KubernetesApiOperations.readList(objectMapper.getFactory().createParser(json),
+				new PodStatusDecoder(objectMapper)::readPod, pods::add);
+		assertThat(continueToken).isNull();
+		return pods;
+	}
+}
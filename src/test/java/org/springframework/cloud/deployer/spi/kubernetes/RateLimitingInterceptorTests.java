@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RateLimitingInterceptor}.
+ */
+public class RateLimitingInterceptorTests {
+
+	@Test
+	public void allowsBurstThenQueuesAtRate() {
+		AtomicLong now = new AtomicLong();
+		RateLimitingInterceptor limiter = new RateLimitingInterceptor(10, 2, 0, now::get);
+
+		assertThat(limiter.reserve()).isEqualTo(0);
+		assertThat(limiter.reserve()).isEqualTo(0);
+		assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+	}
+
+	@Test
+	public void refillsUpToBurst() {
+		AtomicLong now = new AtomicLong();
+		RateLimitingInterceptor limiter = new RateLimitingInterceptor(10, 2, 0, now::get);
+		limiter.reserve();
+		limiter.reserve();
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+		assertThat(limiter.reserve()).isEqualTo(0);
+		assertThat(limiter.reserve()).isEqualTo(0);
+		assertThat(limiter.reserve()).isGreaterThan(0);
+	}
+
+	@Test
+	public void rejectsRequestsQueuedForLongerThanMaxWait() {
+		AtomicLong now = new AtomicLong();
+		RateLimitingInterceptor limiter = new RateLimitingInterceptor(10, 1, 150, now::get);
+
+		assertThat(limiter.reserve()).isEqualTo(0);
+		assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(limiter.reserve()).isEqualTo(-1);
+		assertThat(limiter.reserve()).isEqualTo(-1);
+
+		// rejected requests take no token, so the queue drains at the rate again
+		now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(limiter.reserve()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+	}
+}
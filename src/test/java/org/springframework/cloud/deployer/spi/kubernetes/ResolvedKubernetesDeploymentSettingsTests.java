@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.api.model.Quantity;
+
+import org.springframework.cloud.deployer.spi.core.AppDefinition;
+import org.springframework.cloud.deployer.spi.core.AppDeploymentRequest;
+import org.springframework.core.io.ByteArrayResource;
+
+/**
+ * Unit tests for {@link ResolvedKubernetesDeploymentSettings}.
+ */
+public class ResolvedKubernetesDeploymentSettingsTests {
+
+	@Test
+	public void defaultsToDeployerProperties() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		properties.setEnvironmentVariables(new String[] {"JAVA_OPTS=-Xmx64m"});
+		properties.setMinReadySeconds(5);
+
+		ResolvedKubernetesDeploymentSettings settings = resolve(properties, new HashMap<>());
+
+		assertThat(settings.getLimits()).containsKeys("memory", "cpu");
+		assertThat(settings.getEnvironmentVariables()).containsEntry("JAVA_OPTS", "-Xmx64m");
+		assertThat(settings.getMinReadySeconds()).isEqualTo(5);
+		assertThat(settings.getMaxSurge()).isEqualTo(properties.getRollingUpdate().getMaxSurge());
+		assertThat(settings.isCreateNodePort()).isFalse();
+		assertThat(settings.isAutoscaled()).isFalse();
+	}
+
+	@Test
+	public void deploymentPropertiesOverrideDeployerProperties() {
+		KubernetesDeployerProperties properties = new KubernetesDeployerProperties();
+		properties.setEnvironmentVariables(new String[] {"JAVA_OPTS=-Xmx64m"});
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.environmentVariables", "JAVA_OPTS=-Xmx128m");
+		props.put("spring.cloud.deployer.kubernetes.limits.memory", "1Gi");
+		props.put("spring.cloud.deployer.kubernetes.createNodePort", "32123");
+		props.put("spring.cloud.deployer.kubernetes.autoscaling.max", "4");
+
+		ResolvedKubernetesDeploymentSettings settings = resolve(properties, props);
+
+		assertThat(settings.getEnvironmentVariables()).containsEntry("JAVA_OPTS", "-Xmx128m");
+		assertThat(settings.getLimits()).containsEntry("memory", new Quantity("1Gi"));
+		assertThat(settings.isCreateNodePort()).isTrue();
+		assertThat(settings.getNodePort()).isEqualTo(32123);
+		assertThat(settings.isAutoscaled()).isTrue();
+		assertThat(settings.getAutoscalingMax()).isEqualTo(4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsLoadBalancerAndNodePort() {
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.createLoadBalancer", "true");
+		props.put("spring.cloud.deployer.kubernetes.createNodePort", "true");
+
+		resolve(new KubernetesDeployerProperties(), props);
+	}
+
+	@Test
+	public void acceptsPodCountsAndPercentagesForRollingUpdate() {
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.rollingUpdate.maxSurge", " 2 ");
+		props.put("spring.cloud.deployer.kubernetes.rollingUpdate.maxUnavailable", "50%");
+
+		ResolvedKubernetesDeploymentSettings settings = resolve(new KubernetesDeployerProperties(), props);
+
+		assertThat(settings.getMaxSurge()).isEqualTo("2");
+		assertThat(settings.getMaxUnavailable()).isEqualTo("50%");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidMaxSurge() {
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.rollingUpdate.maxSurge", "two");
+
+		resolve(new KubernetesDeployerProperties(), props);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidMaxUnavailable() {
+		Map<String, String> props = new HashMap<>();
+		props.put("spring.cloud.deployer.kubernetes.rollingUpdate.maxUnavailable", "-1");
+
+		resolve(new KubernetesDeployerProperties(), props);
+	}
+
+	private static ResolvedKubernetesDeploymentSettings resolve(KubernetesDeployerProperties properties,
+	                                                            Map<String, String> props) {
+		AppDefinition definition = new AppDefinition("app-test", null);
+		AppDeploymentRequest request = new AppDeploymentRequest(definition, new ByteArrayResource(new byte[0]), props);
+		return ResolvedKubernetesDeploymentSettings.resolve(properties, request);
+	}
+}
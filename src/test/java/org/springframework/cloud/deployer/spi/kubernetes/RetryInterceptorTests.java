@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RetryInterceptor}.
+ */
+public class RetryInterceptorTests {
+
+	private final RetryInterceptor retryInterceptor = new RetryInterceptor(3, 200, 1000);
+
+	@Test
+	public void honoursRetryAfterUpToMaximum() {
+		assertThat(retryInterceptor.delay(0, "0")).isEqualTo(0);
+		assertThat(retryInterceptor.delay(0, "1")).isEqualTo(1000);
+		assertThat(retryInterceptor.delay(0, "60")).isEqualTo(1000);
+	}
+
+	@Test
+	public void backsOffExponentiallyWithJitter() {
+		for (int i = 0; i < 100; i++) {
+			assertThat(retryInterceptor.delay(0, null)).isBetween(0L, 200L);
+			assertThat(retryInterceptor.delay(2, null)).isBetween(0L, 800L);
+			assertThat(retryInterceptor.delay(10, null)).isBetween(0L, 1000L);
+			assertThat(retryInterceptor.delay(1, "Wed, 21 Oct 2015 07:28:00 GMT")).isBetween(0L, 400L);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cloud.deployer.spi.kubernetes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ */
+public class SingleFlightTests {
+
+	@Test
+	public void coalescesConcurrentCalls() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+
+		CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> singleFlight.execute("app", () -> {
+			started.countDown();
+			await(release);
+			return "status-" + calls.incrementAndGet();
+		}));
+		assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+		CompletableFuture<String> second = CompletableFuture.supplyAsync(
+				() -> singleFlight.execute("app", () -> "status-" + calls.incrementAndGet()));
+		while (singleFlight.getCoalesced() == 0) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("status-1");
+		assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("status-1");
+		assertThat(singleFlight.getExecutions()).isEqualTo(1);
+		assertThat(singleFlight.getCoalesced()).isEqualTo(1);
+	}
+
+	@Test
+	public void doesNotCacheCompletedCalls() {
+		SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThat(singleFlight.execute("app", calls::incrementAndGet)).isEqualTo(1);
+		assertThat(singleFlight.execute("app", calls::incrementAndGet)).isEqualTo(2);
+		assertThat(singleFlight.getCoalesced()).isEqualTo(0);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}